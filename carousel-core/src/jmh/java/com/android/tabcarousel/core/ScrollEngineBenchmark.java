@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the throughput of the carousel scroll math per scroll event. Run
+ * with {@code gradle :carousel-core:jmh}; the GC profiler reports the
+ * allocation per event next to the throughput.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+@State(Scope.Thread)
+public class ScrollEngineBenchmark {
+
+    /**
+     * Space between two tabs
+     */
+    private static final int SEPARATOR_WIDTH = 2;
+
+    /**
+     * Distance scrolled by each simulated scroll event
+     */
+    private static final int SCROLL_STEP = 7;
+
+    /**
+     * Height of the header area that can be scrolled away
+     */
+    private static final int ALLOWED_VERTICAL_SCROLL_LENGTH = 330;
+
+    /**
+     * Number of tabs bound around the viewport, as in the tab strip
+     */
+    private static final int BOUND_TABS = CarouselScrollEngine.MAX_VISIBLE_TABS + 2;
+
+    /**
+     * Total amount of tabs
+     */
+    @Param({ "2", "5", "30", "200" })
+    public int tabCount;
+
+    /**
+     * Width of the carousel
+     */
+    @Param({ "480", "1080", "1440" })
+    public int screenWidth;
+
+    /**
+     * The engine under measure
+     */
+    private final CarouselScrollEngine mEngine = new CarouselScrollEngine();
+
+    /**
+     * The simulated carousel scroll position
+     */
+    private int mScrollX;
+
+    /**
+     * The simulated pager position
+     */
+    private float mPagePosition;
+
+    /**
+     * The simulated top of the first list item
+     */
+    private int mListTop;
+
+    /**
+     * Computes the geometry for the current parameters
+     */
+    @Setup
+    public void setUp() {
+        mEngine.setGeometry(screenWidth, tabCount, SEPARATOR_WIDTH, true);
+        mScrollX = 0;
+        mPagePosition = 0f;
+        mListTop = 0;
+    }
+
+    /**
+     * A measure pass of the carousel
+     */
+    @Benchmark
+    public int measure() {
+        mEngine.setGeometry(screenWidth, tabCount, SEPARATOR_WIDTH, true);
+        return mEngine.getChildWidth();
+    }
+
+    /**
+     * A carousel scroll event: the scaled position sent to the listener and
+     * the dimming of the bound tabs
+     */
+    @Benchmark
+    public void carouselScroll(Blackhole blackhole) {
+        final int oldScrollX = mScrollX;
+        mScrollX = nextScrollX(oldScrollX);
+        blackhole.consume(mEngine.getRoundedScaledScroll(mScrollX));
+        blackhole.consume(mEngine.getRoundedScaledScroll(oldScrollX));
+
+        final float position = mEngine.getTabPosition(mScrollX, 0);
+        final int first = Math.max(0, (int) position - 1);
+        final int last = Math.min(tabCount - 1, first + BOUND_TABS - 1);
+        for (int i = first; i <= last; i++) {
+            blackhole.consume(CarouselScrollEngine.getTabAlpha(i, position));
+        }
+    }
+
+    /**
+     * A pager scroll event mapped back to the carousel
+     */
+    @Benchmark
+    public int pageScrolled() {
+        mPagePosition += 0.013f;
+        if (mPagePosition > tabCount - 1) {
+            mPagePosition = 0f;
+        }
+        return mEngine.getScrollXForPosition(mPagePosition);
+    }
+
+    /**
+     * A list scroll event moving the header
+     */
+    @Benchmark
+    public float headerScroll() {
+        mListTop = mListTop <= -2 * ALLOWED_VERTICAL_SCROLL_LENGTH ? 0 : mListTop - SCROLL_STEP;
+        final int firstVisibleItem = mListTop < -ALLOWED_VERTICAL_SCROLL_LENGTH ? 1 : 0;
+        return HeaderScrollEngine.getHeaderY(firstVisibleItem, mListTop,
+                ALLOWED_VERTICAL_SCROLL_LENGTH);
+    }
+
+    /**
+     * @return The next scroll position, wrapping around at the end of the
+     *         scroll range
+     */
+    private int nextScrollX(int scrollX) {
+        final int allowed = Math.max(0, mEngine.getAllowedHorizontalScrollLength());
+        final int next = scrollX + SCROLL_STEP;
+        return next > allowed ? 0 : next;
+    }
+}
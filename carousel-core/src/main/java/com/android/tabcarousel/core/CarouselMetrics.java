@@ -0,0 +1,340 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms describing what a carousel costs at
+ * runtime.
+ * <p>
+ * Every update is a single atomic add, so the metrics can be recorded from any
+ * thread without locking and are cheap enough to leave enabled in production
+ * builds. Call {@code #snapshotAndReset()} periodically to read what happened
+ * since the previous snapshot.
+ * <p>
+ * Latencies are recorded in power of two nanosecond buckets: bucket {@code i}
+ * holds the durations shorter than {@code 2^i} nanoseconds and at least
+ * {@code 2^(i-1)}, the last bucket holds everything longer.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+public final class CarouselMetrics {
+
+    /**
+     * Scroll changes received by the carousel
+     */
+    public static final int COUNTER_SCROLL_EVENTS_RECEIVED = 0;
+
+    /**
+     * Scroll changes sent to the carousel listener, lower than the received
+     * ones when scroll events are coalesced
+     */
+    public static final int COUNTER_SCROLL_EVENTS_DISPATCHED = 1;
+
+    /**
+     * Fake drags started on the pager
+     */
+    public static final int COUNTER_FAKE_DRAGS = 2;
+
+    /**
+     * Header Y restore animations started
+     */
+    public static final int COUNTER_Y_RESTORES_STARTED = 3;
+
+    /**
+     * Header Y restore animations cancelled before they ended
+     */
+    public static final int COUNTER_Y_RESTORES_CANCELLED = 4;
+
+    /**
+     * Times the header or the tab images were switched to hardware layers
+     */
+    public static final int COUNTER_HARDWARE_LAYERS = 5;
+
+    /**
+     * Measure passes, their count is the amount of passes
+     */
+    public static final int HISTOGRAM_MEASURE = 0;
+
+    /**
+     * Layout passes, their count is the amount of passes
+     */
+    public static final int HISTOGRAM_LAYOUT = 1;
+
+    /**
+     * Binding a tab to its label and image
+     */
+    public static final int HISTOGRAM_TAB_BIND = 2;
+
+    /**
+     * Time spent inside the carousel listener callbacks
+     */
+    public static final int HISTOGRAM_LISTENER = 3;
+
+    /**
+     * How long the header kept a hardware layer, from creation to release
+     */
+    public static final int HISTOGRAM_HEADER_LAYER = 4;
+
+    /**
+     * How long the tab images kept their hardware layers, from creation to
+     * release
+     */
+    public static final int HISTOGRAM_TAB_LAYERS = 5;
+
+    /**
+     * Number of buckets of each histogram, the last one is about a second
+     */
+    public static final int BUCKET_COUNT = 32;
+
+    /**
+     * Number of counters
+     */
+    private static final int COUNTER_COUNT = 6;
+
+    /**
+     * Number of histograms
+     */
+    private static final int HISTOGRAM_COUNT = 6;
+
+    /**
+     * The counters
+     */
+    private final AtomicLongArray mCounters = new AtomicLongArray(COUNTER_COUNT);
+
+    /**
+     * The histogram buckets, indexed by histogram then bucket
+     */
+    private final AtomicLongArray mBuckets = new AtomicLongArray(HISTOGRAM_COUNT * BUCKET_COUNT);
+
+    /**
+     * The total time recorded in each histogram
+     */
+    private final AtomicLongArray mTotalNanos = new AtomicLongArray(HISTOGRAM_COUNT);
+
+    /**
+     * When the current snapshot interval started
+     */
+    private final AtomicLong mIntervalStart = new AtomicLong(System.nanoTime());
+
+    /**
+     * @return The current time, to pass to {@code #record(int, long)}
+     */
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Increments a counter
+     *
+     * @param counter One of the {@code COUNTER_} constants
+     */
+    public void increment(int counter) {
+        mCounters.incrementAndGet(counter);
+    }
+
+    /**
+     * Records the time elapsed since the given start time
+     *
+     * @param histogram One of the {@code HISTOGRAM_} constants
+     * @param startNanos The start time, as returned by {@code #now()}
+     */
+    public void record(int histogram, long startNanos) {
+        recordDuration(histogram, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records a duration
+     *
+     * @param histogram One of the {@code HISTOGRAM_} constants
+     * @param nanos The duration in nanoseconds
+     */
+    public void recordDuration(int histogram, long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        mBuckets.incrementAndGet(histogram * BUCKET_COUNT + getBucket(nanos));
+        mTotalNanos.addAndGet(histogram, nanos);
+    }
+
+    /**
+     * @return The values recorded since the last reset, leaving them in place
+     */
+    public Snapshot snapshot() {
+        return takeSnapshot(false);
+    }
+
+    /**
+     * Reads the values recorded since the last reset and starts a new
+     * interval. An update racing with the reset lands in either snapshot but
+     * is never lost.
+     *
+     * @return The values recorded since the last reset
+     */
+    public Snapshot snapshotAndReset() {
+        return takeSnapshot(true);
+    }
+
+    /**
+     * Reads every value, resetting them if asked to
+     */
+    private Snapshot takeSnapshot(boolean reset) {
+        final long now = System.nanoTime();
+        final long intervalStart = reset ? mIntervalStart.getAndSet(now) : mIntervalStart.get();
+        final long[] counters = new long[COUNTER_COUNT];
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            counters[i] = reset ? mCounters.getAndSet(i, 0) : mCounters.get(i);
+        }
+        final long[] buckets = new long[HISTOGRAM_COUNT * BUCKET_COUNT];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = reset ? mBuckets.getAndSet(i, 0) : mBuckets.get(i);
+        }
+        final long[] totalNanos = new long[HISTOGRAM_COUNT];
+        for (int i = 0; i < HISTOGRAM_COUNT; i++) {
+            totalNanos[i] = reset ? mTotalNanos.getAndSet(i, 0) : mTotalNanos.get(i);
+        }
+        return new Snapshot(now - intervalStart, counters, buckets, totalNanos);
+    }
+
+    /**
+     * @param nanos A duration in nanoseconds
+     * @return The bucket holding the duration
+     */
+    static int getBucket(long nanos) {
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    /**
+     * @param bucket A bucket index
+     * @return The exclusive upper bound of the bucket in nanoseconds, or
+     *         {@code Long#MAX_VALUE} for the last bucket
+     */
+    public static long getBucketUpperBoundNanos(int bucket) {
+        return bucket >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /** The values recorded during an interval */
+    public static final class Snapshot {
+
+        /**
+         * Length of the interval
+         */
+        private final long mIntervalNanos;
+
+        /**
+         * The counters
+         */
+        private final long[] mCounters;
+
+        /**
+         * The histogram buckets, indexed by histogram then bucket
+         */
+        private final long[] mBuckets;
+
+        /**
+         * The total time recorded in each histogram
+         */
+        private final long[] mTotalNanos;
+
+        /**
+         * Constructor for <code>Snapshot</code>
+         */
+        Snapshot(long intervalNanos, long[] counters, long[] buckets, long[] totalNanos) {
+            mIntervalNanos = intervalNanos;
+            mCounters = counters;
+            mBuckets = buckets;
+            mTotalNanos = totalNanos;
+        }
+
+        /**
+         * @return The length of the interval in nanoseconds
+         */
+        public long getIntervalNanos() {
+            return mIntervalNanos;
+        }
+
+        /**
+         * @param counter One of the {@code COUNTER_} constants
+         * @return The value of the counter
+         */
+        public long getCounter(int counter) {
+            return mCounters[counter];
+        }
+
+        /**
+         * @param histogram One of the {@code HISTOGRAM_} constants
+         * @param bucket A bucket index
+         * @return The amount of durations recorded in the bucket
+         */
+        public long getBucketCount(int histogram, int bucket) {
+            return mBuckets[histogram * BUCKET_COUNT + bucket];
+        }
+
+        /**
+         * @param histogram One of the {@code HISTOGRAM_} constants
+         * @return The amount of durations recorded
+         */
+        public long getCount(int histogram) {
+            long count = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                count += mBuckets[histogram * BUCKET_COUNT + i];
+            }
+            return count;
+        }
+
+        /**
+         * @param histogram One of the {@code HISTOGRAM_} constants
+         * @return The sum of the durations recorded in nanoseconds
+         */
+        public long getTotalNanos(int histogram) {
+            return mTotalNanos[histogram];
+        }
+
+        /**
+         * @param histogram One of the {@code HISTOGRAM_} constants
+         * @return The mean duration in nanoseconds, 0 if nothing was recorded
+         */
+        public long getMeanNanos(int histogram) {
+            final long count = getCount(histogram);
+            return count > 0 ? mTotalNanos[histogram] / count : 0;
+        }
+
+        /**
+         * @param histogram One of the {@code HISTOGRAM_} constants
+         * @param percentile The percentile, between 0 and 100
+         * @return The upper bound of the bucket holding the percentile in
+         *         nanoseconds, 0 if nothing was recorded
+         */
+        public long getPercentileNanos(int histogram, float percentile) {
+            final long count = getCount(histogram);
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(count * percentile / 100f));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += mBuckets[histogram * BUCKET_COUNT + i];
+                if (seen >= rank) {
+                    return getBucketUpperBoundNanos(i);
+                }
+            }
+            return getBucketUpperBoundNanos(BUCKET_COUNT - 1);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel.core;
+
+/**
+ * The horizontal scroll math of the carousel: the tab geometry, the mapping
+ * between the carousel scroll position, the pager position and the range sent
+ * to the carousel listener, and the dimming of the tabs.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+public final class CarouselScrollEngine {
+
+    /**
+     * Max number of tabs sharing the screen width, any tabs beyond are
+     * scrolled into view
+     */
+    public static final int MAX_VISIBLE_TABS = 5;
+
+    /**
+     * Alpha of the layer placed over a tab one or more tabs away from the
+     * scroll position
+     */
+    public static final float MAX_ALPHA = 0.6f;
+
+    /**
+     * Total amount of tabs
+     */
+    private int mTabCount = 0;
+
+    /**
+     * Width of a single tab
+     */
+    private int mTabWidth = 0;
+
+    /**
+     * Space between two tabs
+     */
+    private int mSeparatorWidth = 0;
+
+    /**
+     * Width of the strip holding the tabs
+     */
+    private int mChildWidth = 0;
+
+    /**
+     * Allowed horizontal scroll length
+     */
+    private int mAllowedHorizontalScrollLength = Integer.MIN_VALUE;
+
+    /**
+     * Factor to scale the scroll position sent to the carousel listener
+     */
+    private float mScrollScaleFactor = 1.0f;
+
+    /**
+     * Computes the tab geometry and the scroll bounds.
+     *
+     * @param screenWidth The width of the carousel
+     * @param tabCount The total amount of tabs
+     * @param separatorWidth The space between two tabs
+     * @param multiTabs True if the tabs share the screen width, false if the
+     *            strip is only as wide as the screen
+     */
+    public void setGeometry(int screenWidth, int tabCount, int separatorWidth, boolean multiTabs) {
+        mTabCount = tabCount;
+        mSeparatorWidth = separatorWidth;
+        // Compute the width of a tab as a fraction of the screen width
+        final int visibleTabs = Math.min(tabCount, MAX_VISIBLE_TABS);
+        mTabWidth = visibleTabs > 0 ? Math.round((float) screenWidth / visibleTabs) : 0;
+
+        if (multiTabs) {
+            mChildWidth = tabCount * mTabWidth + (tabCount - 1) * separatorWidth;
+        } else {
+            mChildWidth = screenWidth;
+        }
+
+        // Find the allowed scrolling length by subtracting the current visible
+        // screen width from the width of the strip. Tabs sharing the screen
+        // only overflow it by their separators and rounding, which isn't a
+        // range to scroll through.
+        mAllowedHorizontalScrollLength = tabCount > MAX_VISIBLE_TABS
+                ? mChildWidth - screenWidth : 0;
+
+        // Scrolling by mAllowedHorizontalScrollLength causes listeners to
+        // scroll by the entire screen amount; compute the scale-factor
+        // necessary to make this so.
+        if (mAllowedHorizontalScrollLength <= 0) {
+            // Guard against divide-by-zero.
+            // This hard-coded value prevents a crash, but won't result in the
+            // desired scrolling behavior. We rely on the framework measuring
+            // again with a non-zero screen width.
+            mScrollScaleFactor = 1.0f;
+        } else {
+            mScrollScaleFactor = (float) screenWidth * (tabCount - 1)
+                    / mAllowedHorizontalScrollLength;
+        }
+    }
+
+    /**
+     * @return The total amount of tabs
+     */
+    public int getTabCount() {
+        return mTabCount;
+    }
+
+    /**
+     * @return The width of a single tab
+     */
+    public int getTabWidth() {
+        return mTabWidth;
+    }
+
+    /**
+     * @param x A horizontal position in the strip holding the tabs
+     * @return The index of the tab under the position, or -1 if the position
+     *         is between two tabs or outside of the strip
+     */
+    public int getTabIndexAt(int x) {
+        final int stride = mTabWidth + mSeparatorWidth;
+        if (x < 0 || stride <= 0) {
+            return -1;
+        }
+        final int index = x / stride;
+        if (index >= mTabCount || x - index * stride >= mTabWidth) {
+            return -1;
+        }
+        return index;
+    }
+
+    /**
+     * @return The width of the strip holding the tabs
+     */
+    public int getChildWidth() {
+        return mChildWidth;
+    }
+
+    /**
+     * @return The number of pixels the carousel can be scrolled horizontally
+     */
+    public int getAllowedHorizontalScrollLength() {
+        return mAllowedHorizontalScrollLength;
+    }
+
+    /**
+     * @return The factor scaling the scroll position sent to the carousel
+     *         listener
+     */
+    public float getScrollScaleFactor() {
+        return mScrollScaleFactor;
+    }
+
+    /**
+     * Since we never completely scroll the last tabs off-screen, the draggable
+     * range is less than the width of the carousel. Our listeners don't care
+     * about this... if we scroll 75% percent of our draggable range, they want
+     * to scroll 75% of the entire carousel width, not the same number of
+     * pixels that we scrolled.
+     *
+     * @param scrollX The carousel scroll position
+     * @return The scroll position scaled to the listener's range
+     */
+    public float getScaledScroll(int scrollX) {
+        return scrollX * mScrollScaleFactor;
+    }
+
+    /**
+     * Each position is rounded from its exact scaled value, so rounding errors
+     * don't add up over a long drag.
+     *
+     * @param scrollX The carousel scroll position
+     * @return The scroll position scaled to the listener's range, rounded to a
+     *         whole pixel
+     */
+    public int getRoundedScaledScroll(int scrollX) {
+        return Math.round(scrollX * mScrollScaleFactor);
+    }
+
+    /**
+     * @param scrollX The carousel scroll position
+     * @param currentTab The selected tab, used when the carousel can't scroll
+     * @return The tab position matching the scroll position, including the
+     *         offset into the next tab, between the first and the last tab
+     */
+    public float getTabPosition(int scrollX, int currentTab) {
+        if (mTabCount <= 1 || mAllowedHorizontalScrollLength <= 0) {
+            return currentTab;
+        }
+        final float position = (float) scrollX * (mTabCount - 1)
+                / mAllowedHorizontalScrollLength;
+        return Math.max(0f, Math.min(position, mTabCount - 1));
+    }
+
+    /**
+     * @param position The tab position, including the offset into the next
+     *            tab
+     * @return The carousel scroll position matching the tab position
+     */
+    public int getScrollXForPosition(float position) {
+        if (mTabCount <= 1 || mAllowedHorizontalScrollLength <= 0) {
+            return 0;
+        }
+        return Math.round(position * mAllowedHorizontalScrollLength / (mTabCount - 1));
+    }
+
+    /**
+     * The tab matching the scroll position is fully lit, its neighbours dim
+     * in proportion to their distance from it.
+     *
+     * @param index The index of the tab
+     * @param position The tab position matching the scroll position
+     * @return The alpha of the layer placed over the tab
+     */
+    public static float getTabAlpha(int index, float position) {
+        final float distance = Math.abs(index - position);
+        return MAX_ALPHA * (distance > 1.0f ? 1.0f : distance);
+    }
+}
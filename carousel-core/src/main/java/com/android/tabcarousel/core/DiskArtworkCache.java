@@ -0,0 +1,614 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A size-bounded disk cache of encoded tab artwork.
+ * <p>
+ * The entries are appended to a data file and located through an index file
+ * of fixed-size records, laid out as an open-addressing hash table and read
+ * through a memory-mapped {@link FileChannel}. A lookup probes the mapped
+ * records and does a single positional read of the data file, without opening
+ * any file per entry or parsing anything.
+ * <p>
+ * Once the entries outgrow the maximum size, the least recently used ones are
+ * evicted. Evicted and replaced entries leave holes in the data file, which is
+ * compacted once the holes outweigh the live entries.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+public final class DiskArtworkCache implements Closeable {
+
+    /**
+     * Name of the data file
+     */
+    static final String DATA_FILE = "artwork.data";
+
+    /**
+     * Name of the index file
+     */
+    static final String INDEX_FILE = "artwork.index";
+
+    /**
+     * Identifies an index file
+     */
+    private static final int MAGIC = 0x54434143;
+
+    /**
+     * Version of the file format
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Slots of a new index
+     */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Size of the index header: magic, version, capacity, used slots, data
+     * length and access clock
+     */
+    private static final int HEADER_SIZE = 32;
+
+    /**
+     * Size of an index record: key hash, entry offset, entry length, state
+     * and last access
+     */
+    private static final int RECORD_SIZE = 32;
+
+    /**
+     * Offsets of the header fields
+     */
+    private static final int HEADER_CAPACITY = 8, HEADER_USED = 12, HEADER_DATA_LENGTH = 16,
+            HEADER_CLOCK = 24;
+
+    /**
+     * Offsets of the record fields
+     */
+    private static final int RECORD_HASH = 0, RECORD_OFFSET = 8, RECORD_LENGTH = 16,
+            RECORD_STATE = 20, RECORD_ACCESS = 24;
+
+    /**
+     * States of a record
+     */
+    private static final int STATE_EMPTY = 0, STATE_LIVE = 1, STATE_DELETED = 2;
+
+    /**
+     * Encoding of the keys
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The directory holding the cache files
+     */
+    private final File mDirectory;
+
+    /**
+     * The maximum size of the live entries in bytes
+     */
+    private final long mMaxSize;
+
+    /**
+     * The data file
+     */
+    private RandomAccessFile mDataFile;
+
+    /**
+     * The index file
+     */
+    private RandomAccessFile mIndexFile;
+
+    /**
+     * The mapped index
+     */
+    private MappedByteBuffer mIndex;
+
+    /**
+     * Number of slots of the index
+     */
+    private int mCapacity;
+
+    /**
+     * Slots that are live or deleted, an empty slot ends a probe
+     */
+    private int mUsedSlots;
+
+    /**
+     * Length of the valid part of the data file
+     */
+    private long mDataLength;
+
+    /**
+     * Size of the live entries
+     */
+    private long mSize;
+
+    /**
+     * Number of live entries
+     */
+    private int mEntryCount;
+
+    /**
+     * Lookups that found their entry
+     */
+    private int mHitCount;
+
+    /**
+     * Lookups that missed their entry
+     */
+    private int mMissCount;
+
+    /**
+     * @param directory The directory holding the cache files
+     * @param maxSize The maximum size of the live entries in bytes
+     */
+    private DiskArtworkCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Opens the cache stored in the given directory, creating it if needed.
+     * An unreadable index starts the cache over.
+     * 
+     * @param directory The directory holding the cache files
+     * @param maxSize The maximum size of the live entries in bytes
+     * @return The opened cache
+     * @throws IOException If the cache files can't be opened
+     */
+    public static DiskArtworkCache open(File directory, long maxSize) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        final DiskArtworkCache cache = new DiskArtworkCache(directory, maxSize);
+        cache.openFiles();
+        return cache;
+    }
+
+    /**
+     * Opens the data and index files, starting over if the index is invalid
+     */
+    private void openFiles() throws IOException {
+        mDataFile = new RandomAccessFile(new File(mDirectory, DATA_FILE), "rw");
+        mIndexFile = new RandomAccessFile(new File(mDirectory, INDEX_FILE), "rw");
+        if (mIndexFile.length() < HEADER_SIZE || !mapIndex()) {
+            createIndex(INITIAL_CAPACITY);
+            mDataFile.setLength(0);
+            mDataLength = 0;
+            return;
+        }
+        // Drop whatever an interrupted write appended past the indexed data
+        if (mDataFile.length() > mDataLength) {
+            mDataFile.setLength(mDataLength);
+        }
+        mSize = 0;
+        mEntryCount = 0;
+        for (int slot = 0; slot < mCapacity; slot++) {
+            if (getState(slot) == STATE_LIVE) {
+                mSize += mIndex.getInt(record(slot) + RECORD_LENGTH);
+                mEntryCount++;
+            }
+        }
+    }
+
+    /**
+     * Maps an existing index file
+     * 
+     * @return False if the file isn't a valid index
+     */
+    private boolean mapIndex() throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(mIndexFile.getChannel(), header, 0);
+        final int capacity = header.getInt(HEADER_CAPACITY);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || capacity <= 0
+                || mIndexFile.length() != HEADER_SIZE + (long) capacity * RECORD_SIZE
+                || header.getLong(HEADER_DATA_LENGTH) > mDataFile.length()) {
+            return false;
+        }
+        mIndex = mIndexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                mIndexFile.length());
+        mCapacity = capacity;
+        mUsedSlots = mIndex.getInt(HEADER_USED);
+        mDataLength = mIndex.getLong(HEADER_DATA_LENGTH);
+        return true;
+    }
+
+    /**
+     * Replaces the index file by an empty index of the given capacity
+     */
+    private void createIndex(int capacity) throws IOException {
+        mIndexFile.setLength(0);
+        mIndexFile.setLength(HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        mIndex = mIndexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                mIndexFile.length());
+        mIndex.putInt(0, MAGIC);
+        mIndex.putInt(4, VERSION);
+        mIndex.putInt(HEADER_CAPACITY, capacity);
+        mIndex.putInt(HEADER_USED, 0);
+        mIndex.putLong(HEADER_DATA_LENGTH, 0);
+        mIndex.putLong(HEADER_CLOCK, 0);
+        mCapacity = capacity;
+        mUsedSlots = 0;
+        mSize = 0;
+        mEntryCount = 0;
+    }
+
+    /**
+     * @param key The key of the entry
+     * @return The cached data, or null if the key isn't cached
+     * @throws IOException If the data file can't be read
+     */
+    public synchronized byte[] get(String key) throws IOException {
+        final byte[] keyBytes = key.getBytes(UTF_8);
+        final int slot = findSlot(keyBytes, hash(keyBytes));
+        if (slot < 0) {
+            mMissCount++;
+            return null;
+        }
+        final int record = record(slot);
+        final long offset = mIndex.getLong(record + RECORD_OFFSET);
+        final int length = mIndex.getInt(record + RECORD_LENGTH);
+        final ByteBuffer data = ByteBuffer.allocate(length - 4 - keyBytes.length);
+        readFully(mDataFile.getChannel(), data, offset + 4 + keyBytes.length);
+        mIndex.putLong(record + RECORD_ACCESS, tick());
+        mHitCount++;
+        return data.array();
+    }
+
+    /**
+     * Caches data under the given key, replacing any previous entry, then
+     * evicts the least recently used entries if the cache outgrew its size
+     * 
+     * @param key The key of the entry
+     * @param data The data to cache
+     * @throws IOException If the cache files can't be written
+     */
+    public synchronized void put(String key, byte[] data) throws IOException {
+        final byte[] keyBytes = key.getBytes(UTF_8);
+        final long hash = hash(keyBytes);
+        final int length = 4 + keyBytes.length + data.length;
+        if (length > mMaxSize) {
+            return;
+        }
+        final int previous = findSlot(keyBytes, hash);
+        if (previous >= 0) {
+            deleteSlot(previous);
+        }
+        if ((mUsedSlots + 1) * 4 > mCapacity * 3) {
+            rebuild(mEntryCount * 2 + 1 > mCapacity / 2 ? mCapacity * 2 : mCapacity);
+        }
+
+        // Append the entry, then index it
+        final ByteBuffer entry = ByteBuffer.allocate(length);
+        entry.putInt(keyBytes.length).put(keyBytes).put(data).flip();
+        final long offset = mDataLength;
+        writeFully(mDataFile.getChannel(), entry, offset);
+        mDataLength += length;
+
+        int slot = (int) ((hash & Long.MAX_VALUE) % mCapacity);
+        while (getState(slot) == STATE_LIVE) {
+            slot = (slot + 1) % mCapacity;
+        }
+        if (getState(slot) == STATE_EMPTY) {
+            mUsedSlots++;
+        }
+        final int record = record(slot);
+        mIndex.putLong(record + RECORD_HASH, hash);
+        mIndex.putLong(record + RECORD_OFFSET, offset);
+        mIndex.putInt(record + RECORD_LENGTH, length);
+        mIndex.putInt(record + RECORD_STATE, STATE_LIVE);
+        mIndex.putLong(record + RECORD_ACCESS, tick());
+        mIndex.putInt(HEADER_USED, mUsedSlots);
+        mIndex.putLong(HEADER_DATA_LENGTH, mDataLength);
+        mSize += length;
+        mEntryCount++;
+
+        trimToSize();
+    }
+
+    /**
+     * @param key The key of the entry to drop
+     * @return True if the key was cached
+     */
+    public synchronized boolean remove(String key) {
+        final byte[] keyBytes = key.getBytes(UTF_8);
+        final int slot;
+        try {
+            slot = findSlot(keyBytes, hash(keyBytes));
+        } catch (final IOException e) {
+            return false;
+        }
+        if (slot < 0) {
+            return false;
+        }
+        deleteSlot(slot);
+        return true;
+    }
+
+    /**
+     * Evicts the least recently used entries until the live ones fit, then
+     * compacts the data file if the holes outweigh the live entries
+     */
+    private void trimToSize() throws IOException {
+        while (mSize > mMaxSize) {
+            int oldest = -1;
+            long oldestAccess = Long.MAX_VALUE;
+            for (int slot = 0; slot < mCapacity; slot++) {
+                if (getState(slot) == STATE_LIVE) {
+                    final long access = mIndex.getLong(record(slot) + RECORD_ACCESS);
+                    if (access < oldestAccess) {
+                        oldestAccess = access;
+                        oldest = slot;
+                    }
+                }
+            }
+            if (oldest < 0) {
+                break;
+            }
+            deleteSlot(oldest);
+        }
+        if (mDataLength - mSize > mSize) {
+            rebuild(mCapacity);
+        }
+    }
+
+    /**
+     * Rewrites the data file with the live entries only and builds a new
+     * index of the given capacity for them
+     */
+    private void rebuild(int capacity) throws IOException {
+        final File dataFile = new File(mDirectory, DATA_FILE);
+        final File compactFile = new File(mDirectory, DATA_FILE + ".tmp");
+        final int oldCapacity = mCapacity;
+        final long[] hashes = new long[mEntryCount];
+        final long[] accesses = new long[mEntryCount];
+        final int[] lengths = new int[mEntryCount];
+        final RandomAccessFile compact = new RandomAccessFile(compactFile, "rw");
+        long compactLength = 0;
+        int count = 0;
+        try {
+            compact.setLength(0);
+            final FileChannel source = mDataFile.getChannel();
+            for (int slot = 0; slot < oldCapacity; slot++) {
+                if (getState(slot) != STATE_LIVE) {
+                    continue;
+                }
+                final int record = record(slot);
+                final int length = mIndex.getInt(record + RECORD_LENGTH);
+                final ByteBuffer entry = ByteBuffer.allocate(length);
+                readFully(source, entry, mIndex.getLong(record + RECORD_OFFSET));
+                entry.flip();
+                writeFully(compact.getChannel(), entry, compactLength);
+                hashes[count] = mIndex.getLong(record + RECORD_HASH);
+                accesses[count] = mIndex.getLong(record + RECORD_ACCESS);
+                lengths[count] = length;
+                compactLength += length;
+                count++;
+            }
+        } finally {
+            compact.close();
+        }
+        final long clock = mIndex.getLong(HEADER_CLOCK);
+
+        mDataFile.close();
+        boolean replaced = false;
+        try {
+            replaced = compactFile.renameTo(dataFile);
+        } finally {
+            // Reopened either way: if the rename failed, the old data file
+            // still matches the old index and the cache stays usable
+            mDataFile = new RandomAccessFile(dataFile, "rw");
+        }
+        if (!replaced) {
+            compactFile.delete();
+            throw new IOException("Unable to replace " + dataFile);
+        }
+
+        createIndex(capacity);
+        long offset = 0;
+        for (int i = 0; i < count; i++) {
+            int slot = (int) ((hashes[i] & Long.MAX_VALUE) % capacity);
+            while (getState(slot) != STATE_EMPTY) {
+                slot = (slot + 1) % capacity;
+            }
+            final int record = record(slot);
+            mIndex.putLong(record + RECORD_HASH, hashes[i]);
+            mIndex.putLong(record + RECORD_OFFSET, offset);
+            mIndex.putInt(record + RECORD_LENGTH, lengths[i]);
+            mIndex.putInt(record + RECORD_STATE, STATE_LIVE);
+            mIndex.putLong(record + RECORD_ACCESS, accesses[i]);
+            offset += lengths[i];
+            mSize += lengths[i];
+        }
+        mUsedSlots = count;
+        mEntryCount = count;
+        mDataLength = compactLength;
+        mIndex.putInt(HEADER_USED, mUsedSlots);
+        mIndex.putLong(HEADER_DATA_LENGTH, mDataLength);
+        mIndex.putLong(HEADER_CLOCK, clock);
+    }
+
+    /**
+     * Probes the index for a key
+     * 
+     * @return The slot of the live entry of the key, or -1 if it isn't cached
+     */
+    private int findSlot(byte[] keyBytes, long hash) throws IOException {
+        int slot = (int) ((hash & Long.MAX_VALUE) % mCapacity);
+        for (int probes = 0; probes < mCapacity; probes++) {
+            final int state = getState(slot);
+            if (state == STATE_EMPTY) {
+                return -1;
+            }
+            if (state == STATE_LIVE && mIndex.getLong(record(slot) + RECORD_HASH) == hash
+                    && keyMatches(slot, keyBytes)) {
+                return slot;
+            }
+            slot = (slot + 1) % mCapacity;
+        }
+        return -1;
+    }
+
+    /**
+     * @return True if the entry of the slot was stored under the given key,
+     *         ruling out hash collisions
+     */
+    private boolean keyMatches(int slot, byte[] keyBytes) throws IOException {
+        final ByteBuffer stored = ByteBuffer.allocate(4 + keyBytes.length);
+        readFully(mDataFile.getChannel(), stored, mIndex.getLong(record(slot) + RECORD_OFFSET));
+        if (stored.getInt(0) != keyBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (stored.get(4 + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Marks the entry of a slot as deleted, its data becomes a hole
+     */
+    private void deleteSlot(int slot) {
+        final int record = record(slot);
+        mIndex.putInt(record + RECORD_STATE, STATE_DELETED);
+        mSize -= mIndex.getInt(record + RECORD_LENGTH);
+        mEntryCount--;
+    }
+
+    /**
+     * @return The state of a slot
+     */
+    private int getState(int slot) {
+        return mIndex.getInt(record(slot) + RECORD_STATE);
+    }
+
+    /**
+     * @return The position of the record of a slot in the index
+     */
+    private static int record(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    /**
+     * @return The next value of the access clock
+     */
+    private long tick() {
+        final long clock = mIndex.getLong(HEADER_CLOCK) + 1;
+        mIndex.putLong(HEADER_CLOCK, clock);
+        return clock;
+    }
+
+    /**
+     * Fills the buffer from the given position of the channel
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of cache file");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Writes the whole buffer at the given position of the channel
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * @return The 64-bit FNV-1a hash of a key
+     */
+    private static long hash(byte[] keyBytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (final byte b : keyBytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * @return The size of the live entries in bytes
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    /**
+     * @return The maximum size of the live entries in bytes
+     */
+    public long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @return The number of live entries
+     */
+    public synchronized int getEntryCount() {
+        return mEntryCount;
+    }
+
+    /**
+     * @return The number of lookups that found their entry
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return The number of lookups that missed their entry
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Writes the index back to disk and closes the cache files
+     * 
+     * @throws IOException If the files can't be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (mIndex != null) {
+            mIndex.force();
+            mIndex = null;
+        }
+        try {
+            mIndexFile.close();
+        } finally {
+            mDataFile.close();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel.core;
+
+/**
+ * The vertical scroll math of the header tied to a list: where the header
+ * goes when the list scrolls underneath it.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+public final class HeaderScrollEngine {
+
+    /* This class is never initiated */
+    private HeaderScrollEngine() {
+    }
+
+    /**
+     * If the first item of the list is not visible on the screen, the header
+     * is pinned at the top of the screen, with only the tab labels showing.
+     * Otherwise it follows the top of the first item.
+     *
+     * @param firstVisibleItem The index of the first visible list item
+     * @param topOfFirstItem The top of the first visible list item
+     * @param allowedVerticalScrollLength The number of pixels the header can
+     *            be scrolled up while still showing the tab labels
+     * @return The Y coordinate of the header
+     */
+    public static float getHeaderY(int firstVisibleItem, int topOfFirstItem,
+            int allowedVerticalScrollLength) {
+        if (firstVisibleItem != 0) {
+            return -allowedVerticalScrollLength;
+        }
+        return Math.max(topOfFirstItem, -allowedVerticalScrollLength);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel.core;
+
+/**
+ * The sizing math of the tab artwork: how much to subsample an image while
+ * decoding it and how to scale the result to fill a tab exactly.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+public final class ImageSampling {
+
+    /* This class is never initiated */
+    private ImageSampling() {
+    }
+
+    /**
+     * Picks the largest power of two subsampling that keeps the decoded image
+     * at least as large as the target in both dimensions, so it can still be
+     * center cropped to the target without scaling up.
+     *
+     * @param width The width of the source image
+     * @param height The height of the source image
+     * @param targetWidth The width to fill
+     * @param targetHeight The height to fill
+     * @return The sample size to decode with, 1 to decode at full size
+     */
+    public static int getInSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        if (width <= 0 || height <= 0 || targetWidth <= 0 || targetHeight <= 0) {
+            return 1;
+        }
+        int inSampleSize = 1;
+        while (width / (inSampleSize * 2) >= targetWidth
+                && height / (inSampleSize * 2) >= targetHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * @param width The width of the decoded image
+     * @param height The height of the decoded image
+     * @param targetWidth The width to fill
+     * @param targetHeight The height to fill
+     * @return The scale making the image cover the target, centered on both
+     *         axes and cropping the overflow
+     */
+    public static float getCenterCropScale(int width, int height, int targetWidth,
+            int targetHeight) {
+        return Math.max((float) targetWidth / width, (float) targetHeight / height);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the geometry and the position mapping of {@link CarouselScrollEngine}.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+public class CarouselScrollEngineTest {
+
+    /**
+     * Width of the carousel
+     */
+    private static final int SCREEN_WIDTH = 1080;
+
+    /**
+     * Space between two tabs
+     */
+    private static final int SEPARATOR_WIDTH = 3;
+
+    /**
+     * The scroll range covers the whole strip, separators included, so the
+     * last tab ends at the right edge once scrolled to
+     */
+    @Test
+    public void scrollRangeIncludesSeparators() {
+        final CarouselScrollEngine engine = new CarouselScrollEngine();
+        for (final int tabCount : new int[] { 6, 7, 30, 200 }) {
+            engine.setGeometry(SCREEN_WIDTH, tabCount, SEPARATOR_WIDTH, true);
+            final int range = engine.getChildWidth() - SCREEN_WIDTH;
+            assertEquals(tabCount * engine.getTabWidth() + (tabCount - 1) * SEPARATOR_WIDTH,
+                    engine.getChildWidth());
+            assertEquals(range, engine.getAllowedHorizontalScrollLength());
+            assertEquals(range, engine.getScrollXForPosition(tabCount - 1));
+            assertEquals(0, engine.getScrollXForPosition(0));
+            assertEquals(tabCount - 1, engine.getTabPosition(range, 0), 0.0001f);
+            assertEquals((float) SCREEN_WIDTH * (tabCount - 1),
+                    engine.getScaledScroll(range), 0.5f);
+        }
+    }
+
+    /**
+     * Positions outside of the scroll range map to the first or last tab
+     */
+    @Test
+    public void tabPositionIsClamped() {
+        final CarouselScrollEngine engine = new CarouselScrollEngine();
+        engine.setGeometry(SCREEN_WIDTH, 200, SEPARATOR_WIDTH, true);
+        final int range = engine.getAllowedHorizontalScrollLength();
+        assertEquals(199f, engine.getTabPosition(range + 600, 0), 0f);
+        assertEquals(0f, engine.getTabPosition(-50, 0), 0f);
+        for (int scrollX = 0; scrollX <= range; scrollX += 97) {
+            final float position = engine.getTabPosition(scrollX, 0);
+            assertTrue(position >= 0f && position <= 199f);
+        }
+    }
+
+    /**
+     * Tabs sharing the screen don't scroll, however their widths round and
+     * whatever the separators add up to
+     */
+    @Test
+    public void sharedScreenDoesNotScroll() {
+        final CarouselScrollEngine engine = new CarouselScrollEngine();
+        // 1082 / 3 rounds up, so the tabs overflow the screen by a pixel
+        for (final int screenWidth : new int[] { SCREEN_WIDTH, 1081, 1082 }) {
+            for (int tabCount = 1; tabCount <= CarouselScrollEngine.MAX_VISIBLE_TABS;
+                    tabCount++) {
+                engine.setGeometry(screenWidth, tabCount, SEPARATOR_WIDTH, true);
+                assertEquals(0, engine.getAllowedHorizontalScrollLength());
+                assertEquals(1.0f, engine.getScrollScaleFactor(), 0f);
+                assertEquals(2f, engine.getTabPosition(40, 2), 0f);
+            }
+        }
+    }
+
+    /**
+     * A strip as wide as the screen doesn't scroll
+     */
+    @Test
+    public void singleTabStripDoesNotScroll() {
+        final CarouselScrollEngine engine = new CarouselScrollEngine();
+        engine.setGeometry(SCREEN_WIDTH, 30, SEPARATOR_WIDTH, false);
+        assertEquals(SCREEN_WIDTH, engine.getChildWidth());
+        assertEquals(0, engine.getAllowedHorizontalScrollLength());
+        assertEquals(1.0f, engine.getScrollScaleFactor(), 0f);
+    }
+
+    /**
+     * Positions in the strip resolve to the tab under them, and to none over
+     * a separator
+     */
+    @Test
+    public void tabIndexAt() {
+        final CarouselScrollEngine engine = new CarouselScrollEngine();
+        engine.setGeometry(SCREEN_WIDTH, 30, SEPARATOR_WIDTH, true);
+        final int stride = engine.getTabWidth() + SEPARATOR_WIDTH;
+        assertEquals(0, engine.getTabIndexAt(0));
+        assertEquals(-1, engine.getTabIndexAt(engine.getTabWidth()));
+        assertEquals(1, engine.getTabIndexAt(stride));
+        assertEquals(29, engine.getTabIndexAt(engine.getChildWidth() - 1));
+        assertEquals(-1, engine.getTabIndexAt(engine.getChildWidth()));
+        assertEquals(-1, engine.getTabIndexAt(-1));
+    }
+}
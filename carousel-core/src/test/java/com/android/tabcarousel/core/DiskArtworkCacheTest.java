@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Tests {@link DiskArtworkCache} against files in a temporary directory.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+public class DiskArtworkCacheTest {
+
+    /**
+     * Size of the artwork of the tests
+     */
+    private static final int ARTWORK_SIZE = 100;
+
+    /**
+     * Size of an entry of a single character key: key length, key and data
+     */
+    private static final int ENTRY_SIZE = 4 + 1 + ARTWORK_SIZE;
+
+    /**
+     * Holds the cache files
+     */
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    /**
+     * The directory of the cache
+     */
+    private File mDirectory;
+
+    /**
+     * The cache under test
+     */
+    private DiskArtworkCache mCache;
+
+    /**
+     * Opens a cache holding three entries
+     */
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = mFolder.newFolder("artwork");
+        mCache = DiskArtworkCache.open(mDirectory, 3 * ENTRY_SIZE);
+    }
+
+    /**
+     * Closes the cache
+     */
+    @After
+    public void tearDown() throws IOException {
+        mCache.close();
+    }
+
+    /**
+     * Cached data reads back as written, missing keys read as null
+     */
+    @Test
+    public void putThenGet() throws IOException {
+        mCache.put("a", artwork(1));
+        mCache.put("b", artwork(2));
+        assertArrayEquals(artwork(1), mCache.get("a"));
+        assertArrayEquals(artwork(2), mCache.get("b"));
+        assertNull(mCache.get("c"));
+        assertEquals(2, mCache.getEntryCount());
+        assertEquals(2 * ENTRY_SIZE, mCache.getSize());
+        assertEquals(2, mCache.getHitCount());
+        assertEquals(1, mCache.getMissCount());
+    }
+
+    /**
+     * Putting a key again replaces its data
+     */
+    @Test
+    public void putReplaces() throws IOException {
+        mCache.put("a", artwork(1));
+        mCache.put("a", artwork(2));
+        assertArrayEquals(artwork(2), mCache.get("a"));
+        assertEquals(1, mCache.getEntryCount());
+        assertEquals(ENTRY_SIZE, mCache.getSize());
+    }
+
+    /**
+     * Outgrowing the maximum size evicts the least recently used entry
+     */
+    @Test
+    public void evictsLeastRecentlyUsed() throws IOException {
+        mCache.put("a", artwork(1));
+        mCache.put("b", artwork(2));
+        mCache.put("c", artwork(3));
+        mCache.get("a");
+        mCache.put("d", artwork(4));
+        assertNull(mCache.get("b"));
+        assertArrayEquals(artwork(1), mCache.get("a"));
+        assertArrayEquals(artwork(3), mCache.get("c"));
+        assertArrayEquals(artwork(4), mCache.get("d"));
+        assertEquals(3, mCache.getEntryCount());
+        assertTrue(mCache.getSize() <= mCache.getMaxSize());
+    }
+
+    /**
+     * Data larger than the cache isn't cached
+     */
+    @Test
+    public void skipsOversizedData() throws IOException {
+        mCache.put("a", new byte[3 * ENTRY_SIZE]);
+        assertNull(mCache.get("a"));
+        assertEquals(0, mCache.getEntryCount());
+    }
+
+    /**
+     * The holes left by replaced entries are compacted away
+     */
+    @Test
+    public void compactsHoles() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            mCache.put("a", artwork(i));
+            mCache.put("b", artwork(i + 1));
+        }
+        assertTrue(getDataFile().length() <= 2 * mCache.getSize());
+        assertArrayEquals(artwork(19), mCache.get("a"));
+        assertArrayEquals(artwork(20), mCache.get("b"));
+    }
+
+    /**
+     * The index grows past its initial capacity and keeps every entry
+     */
+    @Test
+    public void growsIndex() throws IOException {
+        mCache.close();
+        final int count = 1000;
+        // The keys are up to six characters long
+        mCache = DiskArtworkCache.open(mDirectory, (long) count * (ENTRY_SIZE + 5));
+        for (int i = 0; i < count; i++) {
+            mCache.put("key" + i, artwork(i));
+        }
+        assertEquals(count, mCache.getEntryCount());
+        for (int i = 0; i < count; i++) {
+            assertArrayEquals(artwork(i), mCache.get("key" + i));
+        }
+    }
+
+    /**
+     * A reopened cache finds the entries written before it was closed
+     */
+    @Test
+    public void reopens() throws IOException {
+        mCache.put("a", artwork(1));
+        mCache.put("b", artwork(2));
+        mCache.close();
+
+        mCache = DiskArtworkCache.open(mDirectory, 3 * ENTRY_SIZE);
+        assertEquals(2, mCache.getEntryCount());
+        assertEquals(2 * ENTRY_SIZE, mCache.getSize());
+        assertArrayEquals(artwork(1), mCache.get("a"));
+        assertArrayEquals(artwork(2), mCache.get("b"));
+    }
+
+    /**
+     * Bytes written past the indexed data, as by a write interrupted before
+     * its entry was indexed, are dropped on open
+     */
+    @Test
+    public void truncatesUnindexedData() throws IOException {
+        mCache.put("a", artwork(1));
+        mCache.close();
+        final long length = getDataFile().length();
+        final RandomAccessFile data = new RandomAccessFile(getDataFile(), "rw");
+        try {
+            data.seek(length);
+            data.write(artwork(9));
+        } finally {
+            data.close();
+        }
+
+        mCache = DiskArtworkCache.open(mDirectory, 3 * ENTRY_SIZE);
+        assertEquals(length, getDataFile().length());
+        assertArrayEquals(artwork(1), mCache.get("a"));
+        mCache.put("b", artwork(2));
+        assertArrayEquals(artwork(2), mCache.get("b"));
+    }
+
+    /**
+     * An unreadable index starts the cache over
+     */
+    @Test
+    public void startsOverOnInvalidIndex() throws IOException {
+        mCache.put("a", artwork(1));
+        mCache.close();
+        final RandomAccessFile index = new RandomAccessFile(new File(mDirectory,
+                DiskArtworkCache.INDEX_FILE), "rw");
+        try {
+            index.writeInt(0);
+        } finally {
+            index.close();
+        }
+
+        mCache = DiskArtworkCache.open(mDirectory, 3 * ENTRY_SIZE);
+        assertEquals(0, mCache.getEntryCount());
+        assertNull(mCache.get("a"));
+        assertEquals(0, getDataFile().length());
+    }
+
+    /**
+     * @return The data file of the cache
+     */
+    private File getDataFile() {
+        return new File(mDirectory, DiskArtworkCache.DATA_FILE);
+    }
+
+    /**
+     * @return Artwork filled with a value
+     */
+    private static byte[] artwork(int value) {
+        final byte[] artwork = new byte[ARTWORK_SIZE];
+        for (int i = 0; i < artwork.length; i++) {
+            artwork[i] = (byte) (value + i);
+        }
+        return artwork;
+    }
+}
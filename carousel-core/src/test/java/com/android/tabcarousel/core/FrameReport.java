@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel.core;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Collects what the carousel did in each frame of a replayed
+ * {@link ScrollTrace} and writes it as JSON.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+public final class FrameReport {
+
+    /**
+     * Measure passes of the carousel
+     */
+    public static final int COUNTER_MEASURES = 0;
+
+    /**
+     * Layout passes of the carousel
+     */
+    public static final int COUNTER_LAYOUTS = 1;
+
+    /**
+     * Draw passes of the view tree holding the carousel
+     */
+    public static final int COUNTER_DRAWS = 2;
+
+    /**
+     * Header animations started
+     */
+    public static final int COUNTER_ANIMATOR_STARTS = 3;
+
+    /**
+     * Calls made to the carousel listener
+     */
+    public static final int COUNTER_LISTENER_CALLBACKS = 4;
+
+    /**
+     * The names of the counters, as written to the report
+     */
+    private static final String[] COUNTER_NAMES = {
+            "measures", "layouts", "draws", "animatorStarts", "listenerCallbacks"
+    };
+
+    /**
+     * The name of the replayed trace
+     */
+    private final String mTraceName;
+
+    /**
+     * The counters of each frame, indexed by frame then counter
+     */
+    private final int[][] mCounters;
+
+    /**
+     * @param traceName The name of the replayed trace
+     * @param frameCount The number of frames replayed
+     */
+    public FrameReport(String traceName, int frameCount) {
+        mTraceName = traceName;
+        mCounters = new int[frameCount][COUNTER_NAMES.length];
+    }
+
+    /**
+     * Adds to a counter of the given frame
+     *
+     * @param frame The frame
+     * @param counter One of the {@code COUNTER_} constants
+     * @param amount The amount to add
+     */
+    public void add(int frame, int counter, int amount) {
+        mCounters[frame][counter] += amount;
+    }
+
+    /**
+     * @param frame The frame
+     * @param counter One of the {@code COUNTER_} constants
+     * @return The value of the counter in the given frame
+     */
+    public int get(int frame, int counter) {
+        return mCounters[frame][counter];
+    }
+
+    /**
+     * @param counter One of the {@code COUNTER_} constants
+     * @return The value of the counter summed over every frame
+     */
+    public int getTotal(int counter) {
+        int total = 0;
+        for (final int[] frame : mCounters) {
+            total += frame[counter];
+        }
+        return total;
+    }
+
+    /**
+     * @return The number of frames replayed
+     */
+    public int getFrameCount() {
+        return mCounters.length;
+    }
+
+    /**
+     * Writes the report as a single JSON object holding the counters of
+     * every frame and their totals
+     *
+     * @param out The {@link Writer} to write to
+     * @throws IOException If the report can't be written
+     */
+    public void writeJson(Writer out) throws IOException {
+        out.write("{\"trace\":\"");
+        out.write(mTraceName.replace("\\", "\\\\").replace("\"", "\\\""));
+        out.write("\",\"frames\":[");
+        for (int frame = 0; frame < mCounters.length; frame++) {
+            if (frame > 0) {
+                out.write(',');
+            }
+            out.write("{\"frame\":");
+            out.write(Integer.toString(frame));
+            for (int counter = 0; counter < COUNTER_NAMES.length; counter++) {
+                writeCounter(out, counter, mCounters[frame][counter]);
+            }
+            out.write('}');
+        }
+        out.write("],\"totals\":{");
+        for (int counter = 0; counter < COUNTER_NAMES.length; counter++) {
+            if (counter > 0) {
+                out.write(',');
+            }
+            out.write('"');
+            out.write(COUNTER_NAMES[counter]);
+            out.write("\":");
+            out.write(Integer.toString(getTotal(counter)));
+        }
+        out.write("}}\n");
+        out.flush();
+    }
+
+    /**
+     * Writes one counter as a JSON member following another member
+     */
+    private static void writeCounter(Writer out, int counter, int value) throws IOException {
+        out.write(",\"");
+        out.write(COUNTER_NAMES[counter]);
+        out.write("\":");
+        out.write(Integer.toString(value));
+    }
+}
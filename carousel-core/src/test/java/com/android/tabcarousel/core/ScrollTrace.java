@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A recorded sequence of touch, list-scroll and tab-tap events, grouped by
+ * display frame, which can be replayed against a carousel.
+ * <p>
+ * Traces are stored as text, one event per line:
+ *
+ * <pre>
+ * # comment
+ * name slow_drag
+ * &lt;frame&gt; down &lt;x&gt; &lt;y&gt;
+ * &lt;frame&gt; move &lt;x&gt; &lt;y&gt;
+ * &lt;frame&gt; up &lt;x&gt; &lt;y&gt;
+ * &lt;frame&gt; list &lt;firstVisibleItem&gt; &lt;topOfFirstItem&gt;
+ * &lt;frame&gt; tap &lt;tabIndex&gt; 0
+ * &lt;frame&gt; idle 0 0
+ * </pre>
+ * Touch coordinates are fractions of the carousel width and height, so a
+ * trace replays the same on any screen size.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+public final class ScrollTrace {
+
+    /**
+     * A finger touches the carousel
+     */
+    public static final int TYPE_DOWN = 0;
+
+    /**
+     * The finger moves over the carousel
+     */
+    public static final int TYPE_MOVE = 1;
+
+    /**
+     * The finger is lifted from the carousel
+     */
+    public static final int TYPE_UP = 2;
+
+    /**
+     * The list under the header scrolls
+     */
+    public static final int TYPE_LIST_SCROLL = 3;
+
+    /**
+     * A tab is tapped
+     */
+    public static final int TYPE_TAB_TAP = 4;
+
+    /**
+     * Nothing happens, used to extend a trace over idle frames
+     */
+    public static final int TYPE_IDLE = 5;
+
+    /**
+     * The names of the event types, as used in the text format
+     */
+    private static final String[] TYPE_NAMES = {
+            "down", "move", "up", "list", "tap", "idle"
+    };
+
+    /**
+     * Resource path of the bundled traces
+     */
+    private static final String TRACES_PATH = "/com/android/tabcarousel/core/traces/";
+
+    /**
+     * The traces bundled with this module
+     */
+    public static final String[] STARTER_TRACES = {
+            "slow_drag", "fling", "tab_tap", "back_and_forth"
+    };
+
+    /**
+     * The name of the trace
+     */
+    private final String mName;
+
+    /**
+     * The events, ordered by frame
+     */
+    private final List<Event> mEvents;
+
+    /**
+     * @param name The name of the trace
+     * @param events The events, ordered by frame
+     */
+    public ScrollTrace(String name, List<Event> events) {
+        mName = name;
+        mEvents = events;
+    }
+
+    /**
+     * @return The name of the trace
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return The events, ordered by frame
+     */
+    public List<Event> getEvents() {
+        return mEvents;
+    }
+
+    /**
+     * @return The number of frames spanned by the trace
+     */
+    public int getFrameCount() {
+        return mEvents.isEmpty() ? 0 : mEvents.get(mEvents.size() - 1).frame + 1;
+    }
+
+    /**
+     * Loads one of the {@code #STARTER_TRACES}
+     *
+     * @param name The name of the trace
+     * @return The parsed trace
+     * @throws IOException If the trace can't be read
+     */
+    public static ScrollTrace loadStarterTrace(String name) throws IOException {
+        final InputStream in = ScrollTrace.class.getResourceAsStream(TRACES_PATH + name
+                + ".trace");
+        if (in == null) {
+            throw new IOException("Unknown trace " + name);
+        }
+        try {
+            return parse(new InputStreamReader(in, "UTF-8"));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Parses a trace from its text format
+     *
+     * @param reader The {@link Reader} holding the trace
+     * @return The parsed trace
+     * @throws IOException If the trace can't be read or is malformed
+     */
+    public static ScrollTrace parse(Reader reader) throws IOException {
+        final BufferedReader in = new BufferedReader(reader);
+        final List<Event> events = new ArrayList<Event>();
+        String name = "unnamed";
+        int lastFrame = 0;
+        int lineNumber = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.length() == 0 || line.startsWith("#")) {
+                continue;
+            }
+            final String[] fields = line.split("\\s+");
+            if (fields[0].equals("name") && fields.length == 2) {
+                name = fields[1];
+                continue;
+            }
+            if (fields.length != 4) {
+                throw new IOException("Malformed trace line " + lineNumber + ": " + line);
+            }
+            try {
+                final int frame = Integer.parseInt(fields[0]);
+                if (frame < lastFrame) {
+                    throw new IOException("Trace line " + lineNumber + " goes back in time");
+                }
+                lastFrame = frame;
+                events.add(new Event(frame, parseType(fields[1], lineNumber),
+                        Float.parseFloat(fields[2]), Float.parseFloat(fields[3])));
+            } catch (final NumberFormatException e) {
+                throw new IOException("Malformed trace line " + lineNumber + ": " + line);
+            }
+        }
+        return new ScrollTrace(name, events);
+    }
+
+    /**
+     * @param type The name of an event type
+     * @param lineNumber The line being parsed
+     * @return The matching event type
+     * @throws IOException If the type is unknown
+     */
+    private static int parseType(String type, int lineNumber) throws IOException {
+        for (int i = 0; i < TYPE_NAMES.length; i++) {
+            if (TYPE_NAMES[i].equals(type)) {
+                return i;
+            }
+        }
+        throw new IOException("Unknown event type " + type + " on trace line " + lineNumber);
+    }
+
+    /** A single event of a trace */
+    public static final class Event {
+
+        /**
+         * The frame the event is delivered in
+         */
+        public final int frame;
+
+        /**
+         * The event type, one of the {@code TYPE_} constants
+         */
+        public final int type;
+
+        /**
+         * The X coordinate of a touch, the first visible item of a list
+         * scroll or the index of a tapped tab
+         */
+        public final float a;
+
+        /**
+         * The Y coordinate of a touch or the top of the first item of a list
+         * scroll
+         */
+        public final float b;
+
+        /**
+         * @param frame The frame the event is delivered in
+         * @param type The event type
+         * @param a The first value of the event
+         * @param b The second value of the event
+         */
+        public Event(int frame, int type, float a, float b) {
+            this.frame = frame;
+            this.type = type;
+            this.a = a;
+            this.b = b;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+/**
+ * Tests the {@link ScrollTrace} text format and the bundled traces.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+public class ScrollTraceTest {
+
+    /**
+     * Every starter trace loads, is named after its file and has its events
+     * in frame order
+     */
+    @Test
+    public void starterTracesLoad() throws IOException {
+        for (final String name : ScrollTrace.STARTER_TRACES) {
+            final ScrollTrace trace = ScrollTrace.loadStarterTrace(name);
+            assertEquals(name, trace.getName());
+            assertTrue(name, trace.getFrameCount() > 0);
+            int lastFrame = 0;
+            for (final ScrollTrace.Event event : trace.getEvents()) {
+                assertTrue(name, event.frame >= lastFrame);
+                lastFrame = event.frame;
+            }
+        }
+    }
+
+    /**
+     * Comments and blank lines are skipped, events keep their values
+     */
+    @Test
+    public void parseReadsEvents() throws IOException {
+        final ScrollTrace trace = ScrollTrace.parse(new StringReader(
+                "# A tap\nname tap_then_drag\n\n0 tap 1 0\n2 down 0.5 0.25\n5 up 0.75 0.25\n"));
+        assertEquals("tap_then_drag", trace.getName());
+        assertEquals(6, trace.getFrameCount());
+
+        final List<ScrollTrace.Event> events = trace.getEvents();
+        assertEquals(3, events.size());
+        assertEquals(ScrollTrace.TYPE_TAB_TAP, events.get(0).type);
+        assertEquals(1f, events.get(0).a, 0f);
+        assertEquals(2, events.get(1).frame);
+        assertEquals(ScrollTrace.TYPE_DOWN, events.get(1).type);
+        assertEquals(0.5f, events.get(1).a, 0f);
+        assertEquals(0.25f, events.get(1).b, 0f);
+        assertEquals(ScrollTrace.TYPE_UP, events.get(2).type);
+    }
+
+    /**
+     * An empty trace spans no frame
+     */
+    @Test
+    public void emptyTraceHasNoFrames() throws IOException {
+        assertEquals(0, ScrollTrace.parse(new StringReader("name empty\n")).getFrameCount());
+    }
+
+    /**
+     * Unknown event types are rejected
+     */
+    @Test(expected = IOException.class)
+    public void parseRejectsUnknownType() throws IOException {
+        ScrollTrace.parse(new StringReader("0 swipe 0.5 0.5\n"));
+    }
+
+    /**
+     * Lines missing a value are rejected
+     */
+    @Test(expected = IOException.class)
+    public void parseRejectsMissingValue() throws IOException {
+        ScrollTrace.parse(new StringReader("0 down 0.5\n"));
+    }
+
+    /**
+     * Events must not go back to an earlier frame
+     */
+    @Test(expected = IOException.class)
+    public void parseRejectsFramesGoingBack() throws IOException {
+        ScrollTrace.parse(new StringReader("4 down 0.5 0.5\n2 up 0.5 0.5\n"));
+    }
+}
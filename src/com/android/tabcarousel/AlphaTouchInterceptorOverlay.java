@@ -17,6 +17,8 @@
 package com.android.tabcarousel;
 
 import android.content.Context;
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
 import android.view.View;
 import android.widget.FrameLayout;
 
@@ -37,7 +39,9 @@ import android.widget.FrameLayout;
 public class AlphaTouchInterceptorOverlay extends FrameLayout {
 
     private final View mInterceptorLayer;
+    private final ColorDrawable mAlphaDrawable = new ColorDrawable(Color.BLACK);
     private float mAlpha = 0.0f;
+    private int mAlphaLevel = 0;
     private View mAlphaLayer;
 
     /**
@@ -51,7 +55,9 @@ public class AlphaTouchInterceptorOverlay extends FrameLayout {
         mInterceptorLayer.setBackgroundResource(resId);
         addView(mInterceptorLayer);
 
+        mAlphaDrawable.setAlpha(mAlphaLevel);
         mAlphaLayer = this;
+        Utils.setBackground(mAlphaLayer, mAlphaDrawable);
     }
 
     /**
@@ -64,23 +70,32 @@ public class AlphaTouchInterceptorOverlay extends FrameLayout {
             return;
         }
 
-        // We're no longer the alpha-layer, so make ourself invisible
-        if (mAlphaLayer == this) {
-            Utils.setAlphaOnViewBackground(this, 0.0f);
-        }
-
+        // Move the alpha drawable over, a drawable can only be the background
+        // of one view
+        Utils.setBackground(mAlphaLayer, null);
         mAlphaLayer = alphaLayer == null ? this : alphaLayer;
-        setAlphaLayerValue(mAlpha);
+        Utils.setBackground(mAlphaLayer, mAlphaDrawable);
     }
 
-    /** Sets the alpha value on the alpha layer */
+    /**
+     * Sets the alpha value on the alpha layer. The alpha layer keeps a single
+     * drawable whose alpha is changed in place, and is only invalidated when
+     * the visible level changes.
+     */
     public void setAlphaLayerValue(float alpha) {
         mAlpha = alpha;
-        if (mAlphaLayer != null) {
-            Utils.setAlphaOnViewBackground(mAlphaLayer, mAlpha);
+        final int alphaLevel = (int) (Utils.clamp(alpha, 0.0f, 1.0f) * 255);
+        if (alphaLevel != mAlphaLevel) {
+            mAlphaLevel = alphaLevel;
+            mAlphaDrawable.setAlpha(alphaLevel);
         }
     }
 
+    /** @return The alpha value on the alpha layer */
+    public float getAlphaLayerValue() {
+        return mAlpha;
+    }
+
     /** Delegate to interceptor-layer */
     public void setOverlayOnClickListener(OnClickListener listener) {
         mInterceptorLayer.setOnClickListener(listener);
@@ -23,6 +23,8 @@ import android.view.View;
 import android.widget.AbsListView;
 import android.widget.AbsListView.OnScrollListener;
 
+import com.android.tabcarousel.core.HeaderScrollEngine;
+
 /**
  * Handles scrolling back of a list tied to a header.
  * <p>
@@ -75,21 +77,18 @@ public class BackScrollManager implements OnScrollListener {
         }
 
         // If the FIRST item is not visible on the screen, then the carousel
-        // must be pinned
-        // at the top of the screen.
-        if (firstVisibleItem != 0) {
-            mCarousel.moveToYCoordinate(mPageIndex, -mCarousel.getAllowedVerticalScrollLength());
-            return;
-        }
-
-        final View topView = view.getChildAt(firstVisibleItem);
-        if (topView == null) {
-            return;
+        // must be pinned at the top of the screen.
+        int topOfFirstItem = 0;
+        if (firstVisibleItem == 0) {
+            final View topView = view.getChildAt(firstVisibleItem);
+            if (topView == null) {
+                return;
+            }
+            topOfFirstItem = topView.getTop();
         }
 
-        final float y = view.getChildAt(firstVisibleItem).getTop();
-        final float amtToScroll = Math.max(y, -mCarousel.getAllowedVerticalScrollLength());
-        mCarousel.moveToYCoordinate(mPageIndex, amtToScroll);
+        mCarousel.moveToYCoordinate(mPageIndex, HeaderScrollEngine.getHeaderY(firstVisibleItem,
+                topOfFirstItem, mCarousel.getAllowedVerticalScrollLength()));
     }
 
     /**
@@ -97,6 +96,12 @@ public class BackScrollManager implements OnScrollListener {
      */
     @Override
     public void onScrollStateChanged(AbsListView view, int scrollState) {
+        // Hold back the work of hidden tabs while the list flings
+        CarouselWorkScheduler.getInstance().setListScrollState(
+                mCarousel != null ? mCarousel : view, scrollState);
+        if (mCarousel != null) {
+            mCarousel.setListScrollState(scrollState);
+        }
         if (mScrollableHeader != null) {
             mScrollableHeader.onScrollStateChanged(view, scrollState);
         }
@@ -109,8 +114,10 @@ public class BackScrollManager implements OnScrollListener {
 
         /**
          * Used to capture
-         * {@code BackScrollManager#onScrollStateChanged(AbsListView, int)} in
-         * case you need to pause your disk cache while scrolling.
+         * {@code BackScrollManager#onScrollStateChanged(AbsListView, int)}.
+         * To hold back work while scrolling, submit it to the
+         * {@link CarouselWorkScheduler}, which already follows the scroll
+         * state.
          */
         public void onScrollStateChanged(AbsListView view, int scrollState);
     }
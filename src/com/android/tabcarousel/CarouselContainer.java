@@ -18,66 +18,165 @@ package com.android.tabcarousel;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.Point;
+import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.SystemClock;
+import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
 import android.util.TypedValue;
-import android.view.Display;
-import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.view.View.OnTouchListener;
-import android.view.WindowManager;
 import android.view.animation.AnimationUtils;
 import android.view.animation.Interpolator;
+import android.widget.AbsListView.OnScrollListener;
 import android.widget.HorizontalScrollView;
 import android.widget.ImageView;
-import android.widget.LinearLayout;
 import android.widget.TextView;
 
-import com.nineoldandroids.animation.Animator;
-import com.nineoldandroids.animation.Animator.AnimatorListener;
-import com.nineoldandroids.animation.ObjectAnimator;
+import com.android.tabcarousel.core.CarouselMetrics;
+import com.android.tabcarousel.core.CarouselScrollEngine;
+import com.nineoldandroids.view.ViewHelper;
 
 import java.lang.ref.WeakReference;
 
 /**
- * This is a horizontally scrolling carousel with 2 tabs.
+ * A horizontally scrolling carousel of tabs, kept in sync with a
+ * {@link android.support.v4.view.ViewPager} by a {@link CarouselPagerAdapter}
+ * and moved vertically by the {@link BackScrollManager} of each page.
+ * <p>
+ * The tabs live in a {@link CarouselTabStrip}, which only binds the visible
+ * ones, and the selection indicator is drawn by the carousel over them.
  */
 public class CarouselContainer extends HorizontalScrollView implements OnTouchListener {
 
     /**
-     * Max number of tabs
+     * Time after the last horizontal scroll before the tab image layers are
+     * released, in milliseconds
      */
-    private static final int MAX_TABS = 5;
-    
+    private static final int TAB_LAYERS_RELEASE_DELAY = 100;
+
     /**
-     * Y coordinate of the tab at the given index was selected
+     * The tab geometry and the horizontal scroll math
      */
-    
-    private static final float[] Y_COORDINATE = new float[MAX_TABS];
+    private final CarouselScrollEngine mScrollEngine = new CarouselScrollEngine();
+
+    /**
+     * Height of the tab label
+     */
+    private int mTabDisplayLabelHeight;
 
     /**
-     * Alpha layer to be set on the lable view
+     * Height of the tab image
      */
-    private static final float MAX_ALPHA = 0.6f;
+    private int mTabDisplayImageHeight;
 
     /**
-     * Tab width as defined as a fraction of the screen width
+     * Space between two tabs
      */
-    private float mTabWidthScreenFraction;
+    private int mSeperatorPixels;
 
     /**
-     * Height of the tab label
+     * Height of the selection indicator
+     */
+    private int mIndicatorHeight;
+
+    /**
+     * Draws the selection indicator
+     */
+    private final Paint mIndicatorPaint = new Paint();
+
+    /**
+     * True once the app set the indicator color, kept over configuration
+     * changes
+     */
+    private boolean mIndicatorColorSet = false;
+
+    /**
+     * Tab position of the selection indicator while the carousel can't
+     * scroll, including the offset into the next tab
+     */
+    private float mIndicatorPosition = 0f;
+
+    /**
+     * True to resolve tab taps and draw the pressed tab in the carousel,
+     * false to give each tab its own touch interceptor overlay
+     */
+    private boolean mContainerHitTesting = false;
+
+    /**
+     * Draws the pressed tab while hit testing in the carousel, created on
+     * first use
+     */
+    private Drawable mPressedDrawable;
+
+    /**
+     * The tab under the finger, or {@code CarouselTab#NO_INDEX}
+     */
+    private int mPressedTab = CarouselTab.NO_INDEX;
+
+    /**
+     * X coordinate of the last touch down
+     */
+    private float mTouchDownX;
+
+    /**
+     * Y coordinate of the last touch down
      */
-    private final int mTabDisplayLabelHeight;
+    private float mTouchDownY;
 
     /**
-     * Used to determine is the carousel is animating
+     * Distance a touch can wander before it is no longer a tap
      */
-    private boolean mTabCarouselIsAnimating;
+    private final int mTouchSlop;
+
+    /**
+     * False to never switch to hardware layers
+     */
+    private boolean mHardwareLayersEnabled = true;
+
+    /**
+     * True while a list tied to this header scrolls
+     */
+    private boolean mListScrolling = false;
+
+    /**
+     * True while this view has a hardware layer
+     */
+    private boolean mHeaderLayerActive = false;
+
+    /**
+     * When the header layer was created, 0 while metrics are disabled
+     */
+    private long mHeaderLayerStart;
+
+    /**
+     * True while the bound tab images have hardware layers
+     */
+    private boolean mTabLayersActive = false;
+
+    /**
+     * When the tab image layers were created, 0 while metrics are disabled
+     */
+    private long mTabLayersStart;
+
+    /**
+     * Uptime of the last horizontal scroll, in milliseconds
+     */
+    private long mLastHorizontalScrollTime;
+
+    /**
+     * The result of the last measure pass
+     */
+    private final MeasureCache mMeasureCache = new MeasureCache();
 
     /**
      * Indicates that both tabs are to be used if true, false if only one
@@ -90,19 +189,19 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
     private OnCarouselListener mCarouselListener;
     
     /**
-     * Array with all the tabs
+     * The strip binding the visible tabs
      */
-    private CarouselTab mTabs[] = new CarouselTab[MAX_TABS];
-    
+    private CarouselTabStrip mTabStrip;
+
     /**
-     * total amount of tabs
+     * The label and image of every tab, bound or not
      */
-    private int mTabCount = 0;
+    private TabState[] mTabStates = new TabState[0];
 
     /**
-     * Allowed horizontal scroll length
+     * total amount of tabs
      */
-    private int mAllowedHorizontalScrollLength = Integer.MIN_VALUE;
+    private int mTabCount = 0;
 
     /**
      * Allowed vertical scroll length
@@ -114,21 +213,98 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      */
     private int mLastScrollPosition = Integer.MIN_VALUE;
 
+    /**
+     * Tracks the finger velocity and runs the settles, and drags the carousel
+     * once the lightweight scroller is used
+     */
+    private final CarouselScroller mScroller;
+
+    /**
+     * True to drag through {@code #mScroller} instead of the
+     * {@link HorizontalScrollView}
+     */
+    private boolean mLightweightScroller = false;
+
     /**
      * Current tab index
      */
     private int mCurrentTab = 0;
 
     /**
-     * Factor to scale scroll-amount sent to {@code #mCarouselListener}
+     * The restored tab index, waiting for {@code #initializeTabs(int)}
      */
-    private float mScrollScaleFactor = 1.0f;
+    private int mPendingCurrentTab = CarouselTab.NO_INDEX;
 
     /**
      * True to scroll to the pager's current position, false otherwise
      */
     private boolean mScrollToCurrentTab = false;
 
+    /**
+     * Animates timed Y restores, created on first use. Also keeps track of
+     * whether the tab carousel animation is currently going on or not, in
+     * order to prevent other simultaneous changes to the Y position of the tab
+     * carousel which can cause flicker.
+     */
+    private HeaderAnimator mHeaderAnimator;
+
+    /**
+     * Y coordinate of this view the last time the tab at the given index was
+     * selected
+     */
+    private float[] mYCoordinates = new float[0];
+
+    /**
+     * Number of used entries in {@code #mYCoordinates}
+     */
+    private int mYCoordinateCount = 0;
+
+    /**
+     * True to place this view at the stored Y coordinate of the current tab
+     * during the next layout, false otherwise
+     */
+    private boolean mRestoreYOnLayout = false;
+
+    /**
+     * True to merge the scroll deltas of a frame into one listener update
+     */
+    private boolean mCoalesceScrollEvents = false;
+
+    /**
+     * True while {@code #computeScroll()} steps a fling of this view
+     */
+    private boolean mComputingScroll = false;
+
+    /**
+     * True while a merged scroll update is waiting for the next frame
+     */
+    private boolean mScrollDispatchPending = false;
+
+    /**
+     * Scaled horizontal scroll origin of the pending update
+     */
+    private int mPendingScrollX;
+
+    /**
+     * Vertical scroll origin of the pending update
+     */
+    private int mPendingScrollY;
+
+    /**
+     * Scaled horizontal scroll origin before the pending update
+     */
+    private int mPendingOldScrollX;
+
+    /**
+     * Vertical scroll origin before the pending update
+     */
+    private int mPendingOldScrollY;
+
+    /**
+     * Records what the carousel costs, null while metrics are disabled
+     */
+    private CarouselMetrics mMetrics;
+
     /**
      * @param context The {@link Context} to use
      * @param attrs The attributes of the XML tag that is inflating the view
@@ -138,9 +314,19 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
         // Add the onTouchListener
         setOnTouchListener(this);
         // Retrieve the carousel dimensions
-        final Resources res = getResources();
-        // Height of the label
-        mTabDisplayLabelHeight = res.getDimensionPixelSize(R.dimen.carousel_label_height);
+        loadDimensions();
+        mTouchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+        mScroller = new CarouselScroller(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onFinishInflate() {
+        super.onFinishInflate();
+        mTabStrip = (CarouselTabStrip) findViewById(R.id.carousel_tab_container);
+        mTabStrip.setTabBinder(mTabBinder);
     }
 
     /**
@@ -148,51 +334,28 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      */
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        final int screenWidth = MeasureSpec.getSize(widthMeasureSpec);
-        // Compute the width of a tab as a fraction of the screen width
-        final int tabWidth = Math.round(mTabWidthScreenFraction * screenWidth);
-
-        // Find the allowed scrolling length by subtracting the current visible
-        // screen width
-        // from the total length of the tabs.
-        mAllowedHorizontalScrollLength = tabWidth * mTabCount - screenWidth;
-
-        // Scrolling by mAllowedHorizontalScrollLength causes listeners to
-        // scroll by the entire screen amount; compute the scale-factor
-        // necessary to make this so.
-        if (mAllowedHorizontalScrollLength == 0) {
-            // Guard against divide-by-zero.
-            // This hard-coded value prevents a crash, but won't result in the
-            // desired scrolling behavior. We rely on the framework calling
-            // onMeasure()
-            // again with a non-zero screen width.
-            mScrollScaleFactor = 1.0f;
-        } else {
-            mScrollScaleFactor = screenWidth / mAllowedHorizontalScrollLength;
+        final long start = startTimer();
+        final MeasureCache cache = mMeasureCache;
+        if (!cache.matches(widthMeasureSpec, heightMeasureSpec, mTabCount, mMultiTabs)) {
+            computeMeasurements(widthMeasureSpec, heightMeasureSpec);
         }
 
-        final int tabHeight = getResources().getDimensionPixelSize(R.dimen.carousel_label_height) + getResources().getDimensionPixelSize(R.dimen.carousel_image_height);
-        // Set the child layout's to be mTabCount * the computed tab
-        // width so that the layout's children (which are the tabs) will evenly
-        // split that width.
         if (getChildCount() > 0) {
-            final View child = getChildAt(0);
-
-            // Add 1 dip of separation between the tabs
-            final int seperatorPixels = (int) (TypedValue.applyDimension(
-                    TypedValue.COMPLEX_UNIT_DIP, 1, getResources().getDisplayMetrics()) + 0.5f);
-
-            if (mMultiTabs) {
-                final int size = mTabCount * tabWidth + (mTabCount - 1) * seperatorPixels;
-                child.measure(measureExact(size), measureExact(tabHeight));
-            } else {
-                child.measure(measureExact(screenWidth), measureExact(tabHeight));
-            }
+            mTabStrip.setTabGeometry(cache.mTabWidth, mSeperatorPixels);
+            getChildAt(0).measure(cache.mChildWidthSpec, cache.mChildHeightSpec);
         }
+        setMeasuredDimension(cache.mMeasuredWidth, cache.mMeasuredHeight);
+        recordTime(CarouselMetrics.HISTOGRAM_MEASURE, start);
+    }
 
-        mAllowedVerticalScrollLength = tabHeight - mTabDisplayLabelHeight;
-        setMeasuredDimension(resolveSize(screenWidth, widthMeasureSpec),
-                resolveSize(tabHeight, heightMeasureSpec));
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        loadDimensions();
+        mMeasureCache.invalidate();
     }
 
     /**
@@ -201,7 +364,16 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
     @SuppressLint("DrawAllocation")
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        final long start = startTimer();
         super.onLayout(changed, l, t, r, b);
+        mTabStrip.setViewport(getScrollX(), r - l);
+        if (mRestoreYOnLayout) {
+            mRestoreYOnLayout = false;
+            if (Utils.hasHoneycomb()) {
+                setYCoordinate(getStoredYCoordinateForTab(mCurrentTab));
+            }
+        }
+        recordTime(CarouselMetrics.HISTOGRAM_LAYOUT, start);
         if (!mScrollToCurrentTab) {
             return;
         }
@@ -209,7 +381,7 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
         Utils.doAfterLayout(this, new Runnable() {
             @Override
             public void run() {
-                scrollTo(mCurrentTab == 0 ? 0 : mAllowedHorizontalScrollLength, 0);
+                scrollTo(mScrollEngine.getScrollXForPosition(mCurrentTab), 0);
                 updateAlphaLayers();
             }
         });
@@ -219,8 +391,58 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      * {@inheritDoc}
      */
     @Override
+    protected Parcelable onSaveInstanceState() {
+        final SavedState state = new SavedState(super.onSaveInstanceState());
+        state.mCurrentTab = mCurrentTab;
+        state.mYCoordinates = new float[mYCoordinateCount];
+        System.arraycopy(mYCoordinates, 0, state.mYCoordinates, 0, mYCoordinateCount);
+        return state;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        final SavedState savedState = (SavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+        mYCoordinates = savedState.mYCoordinates;
+        mYCoordinateCount = mYCoordinates.length;
+        if (isValidTab(savedState.mCurrentTab)) {
+            setCurrentTab(savedState.mCurrentTab);
+        } else {
+            // The tabs aren't initialized yet
+            mPendingCurrentTab = savedState.mCurrentTab;
+        }
+        // Place the header and the carousel before the first frame is drawn
+        mRestoreYOnLayout = true;
+        mScrollToCurrentTab = true;
+        requestLayout();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Runs for every scroll step, together with the listener callbacks, so it
+     * only touches preallocated state.
+     */
+    @Override
     protected void onScrollChanged(int x, int y, int oldX, int oldY) {
         super.onScrollChanged(x, y, oldX, oldY);
+        mTabStrip.setViewport(x, getWidth());
+        if (x != oldX) {
+            mLastHorizontalScrollTime = SystemClock.uptimeMillis();
+            if (!mTabLayersActive) {
+                startTabLayers();
+            }
+        }
+        if (mMetrics != null) {
+            mMetrics.increment(CarouselMetrics.COUNTER_SCROLL_EVENTS_RECEIVED);
+        }
 
         // Guard against framework issue where onScrollChanged() is called twice
         // for each touch-move event. This wreaked havoc on the tab-carousel:
@@ -232,17 +454,132 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
             return;
         }
 
-        // Since we never completely scroll the about/updates tabs off-screen,
-        // the draggable range is less than the width of the carousel. Our
-        // listeners don't care about this... if we scroll 75% percent of our
-        // draggable range, they want to scroll 75% of the entire carousel
-        // width, not the same number of pixels that we scrolled.
-        final int scaledL = (int) (x * mScrollScaleFactor);
-        final int oldScaledL = (int) (oldX * mScrollScaleFactor);
-        mCarouselListener.onCarouselScrollChanged(scaledL, y, oldScaledL, oldY);
-
+        // Scale the positions to the range our listeners expect
+        final int scaledL = mScrollEngine.getRoundedScaledScroll(x);
+        final int oldScaledL = mScrollEngine.getRoundedScaledScroll(oldX);
         mLastScrollPosition = x;
-        updateAlphaLayers();
+
+        if (mCoalesceScrollEvents) {
+            // Changes made by a frame step are already once per frame, send
+            // them right away rather than one frame late
+            final boolean inFrame = mComputingScroll || mScroller.isApplyingFrame();
+            // Merge every delta of this frame into a single update
+            if (!mScrollDispatchPending) {
+                mScrollDispatchPending = true;
+                mPendingOldScrollX = oldScaledL;
+                mPendingOldScrollY = oldY;
+                if (!inFrame) {
+                    ViewCompat.postOnAnimation(this, mDispatchScrollRunnable);
+                }
+            }
+            mPendingScrollX = scaledL;
+            mPendingScrollY = y;
+            if (inFrame) {
+                flushPendingScroll();
+            }
+            return;
+        }
+
+        dispatchScrollChanged(scaledL, y, oldScaledL, oldY);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        super.dispatchDraw(canvas);
+        if (mTabCount == 0 || getChildCount() == 0) {
+            return;
+        }
+        // Tabs are laid out one stride apart from the left edge of the strip
+        final int tabWidth = mScrollEngine.getTabWidth();
+        final int bottom = getChildAt(0).getTop() + mTabStrip.getBottom();
+        if (mPressedTab != CarouselTab.NO_INDEX && mPressedDrawable != null) {
+            final int pressedLeft = mPressedTab * (tabWidth + mSeperatorPixels);
+            mPressedDrawable.setBounds(pressedLeft, bottom - mTabStrip.getHeight(),
+                    pressedLeft + tabWidth, bottom);
+            mPressedDrawable.draw(canvas);
+        }
+        final float left = getIndicatorPosition() * (tabWidth + mSeperatorPixels);
+        canvas.drawRect(left, bottom - mIndicatorHeight, left + tabWidth, bottom,
+                mIndicatorPaint);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean verifyDrawable(Drawable who) {
+        return super.verifyDrawable(who) || who == mPressedDrawable;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        removeCallbacks(mDispatchScrollRunnable);
+        mScrollDispatchPending = false;
+        mScroller.onDetachedFromWindow();
+        setPressedTab(CarouselTab.NO_INDEX);
+        releaseHeaderLayer();
+        releaseTabLayers();
+        // A list or pager detached mid-fling never reports going idle
+        CarouselWorkScheduler.getInstance().clearScrollState(this);
+    }
+
+    /**
+     * Moves the selection indicator while the carousel can't scroll, e.g. to
+     * follow a {@link android.support.v4.view.ViewPager} swipe. Otherwise the
+     * indicator follows the scroll position and this is ignored.
+     * 
+     * @param position The tab position, including the offset into the next
+     *            tab
+     */
+    public void setIndicatorPosition(float position) {
+        if (mIndicatorPosition != position) {
+            mIndicatorPosition = position;
+            if (mScrollEngine.getAllowedHorizontalScrollLength() <= 0) {
+                invalidate();
+            }
+        }
+    }
+
+    /**
+     * Sets the color of the selection indicator, {@code R.color.carousel_indicator}
+     * by default
+     * 
+     * @param color The color of the indicator
+     */
+    public void setIndicatorColor(int color) {
+        mIndicatorColorSet = true;
+        if (mIndicatorPaint.getColor() != color) {
+            mIndicatorPaint.setColor(color);
+            invalidate();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void computeScroll() {
+        mComputingScroll = true;
+        super.computeScroll();
+        mComputingScroll = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent ev) {
+        mScroller.onDispatchTouchEvent(ev);
+        final boolean handled = super.dispatchTouchEvent(ev);
+        mScroller.onTouchEventDispatched(ev);
+        return handled;
     }
 
     /**
@@ -250,9 +587,12 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      */
     @Override
     public boolean onInterceptTouchEvent(MotionEvent ev) {
-        final boolean interceptTouch = super.onInterceptTouchEvent(ev);
+        final boolean interceptTouch = mLightweightScroller ? mScroller.onInterceptTouchEvent(ev)
+                : super.onInterceptTouchEvent(ev);
         if (interceptTouch) {
+            final long start = startTimer();
             mCarouselListener.onTouchDown();
+            recordTime(CarouselMetrics.HISTOGRAM_LISTENER, start);
         }
         return interceptTouch;
     }
@@ -263,12 +603,45 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
     @Override
     public boolean onTouch(View v, MotionEvent event) {
         switch (event.getAction()) {
-            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_DOWN: {
+                if (mContainerHitTesting) {
+                    mTouchDownX = event.getX();
+                    mTouchDownY = event.getY();
+                    setPressedTab(getTabIndexAt(mTouchDownX, mTouchDownY));
+                }
+                final long start = startTimer();
                 mCarouselListener.onTouchDown();
+                recordTime(CarouselMetrics.HISTOGRAM_LISTENER, start);
                 return true;
-            case MotionEvent.ACTION_UP:
+            }
+            case MotionEvent.ACTION_MOVE:
+                if (mPressedTab != CarouselTab.NO_INDEX
+                        && (Math.abs(event.getX() - mTouchDownX) > mTouchSlop
+                        || Math.abs(event.getY() - mTouchDownY) > mTouchSlop)) {
+                    // A drag, not a tap
+                    setPressedTab(CarouselTab.NO_INDEX);
+                }
+                break;
+            case MotionEvent.ACTION_UP: {
+                // Deliver the last deltas before the drag ends
+                flushPendingScroll();
+                final long start = startTimer();
                 mCarouselListener.onTouchUp();
+                recordTime(CarouselMetrics.HISTOGRAM_LISTENER, start);
+                if (mPressedTab != CarouselTab.NO_INDEX) {
+                    // Keep the pressed state visible for a short tap
+                    final int tappedTab = mPressedTab;
+                    postDelayed(mUnpressRunnable, ViewConfiguration.getPressedStateDuration());
+                    dispatchTabSelected(tappedTab);
+                }
                 return true;
+            }
+            case MotionEvent.ACTION_CANCEL:
+                setPressedTab(CarouselTab.NO_INDEX);
+                break;
+        }
+        if (mLightweightScroller) {
+            return mScroller.onTouchEvent(event);
         }
         return super.onTouchEvent(event);
     }
@@ -277,7 +650,7 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      * @return True if the carousel is currently animating, false otherwise
      */
     public boolean isTabCarouselIsAnimating() {
-        return mTabCarouselIsAnimating;
+        return mHeaderAnimator != null && mHeaderAnimator.isRunning();
     }
 
     /**
@@ -293,8 +666,8 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      * Clears all stored y coordinates
      */
     public void clearYCoordinates(){
-        for(int i = 0; i < MAX_TABS; i++){
-            Y_COORDINATE[i] = 0f;
+        for (int i = 0; i < mYCoordinateCount; i++) {
+            mYCoordinates[i] = 0f;
         }
     }
 
@@ -306,7 +679,14 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      * @param y The Y cooridinate to move to
      */
     public void storeYCoordinate(int tabIndex, float y) {
-        Y_COORDINATE[tabIndex] = y;
+        if (tabIndex >= mYCoordinates.length) {
+            final float[] yCoordinates = new float[Math.max(tabIndex + 1,
+                    mYCoordinates.length * 2)];
+            System.arraycopy(mYCoordinates, 0, yCoordinates, 0, mYCoordinateCount);
+            mYCoordinates = yCoordinates;
+        }
+        mYCoordinates[tabIndex] = y;
+        mYCoordinateCount = Math.max(mYCoordinateCount, tabIndex + 1);
     }
 
     /**
@@ -321,14 +701,80 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
     public void restoreYCoordinate(int duration, int tabIndex) {
         final float storedYCoordinate = getStoredYCoordinateForTab(tabIndex);
         if(Utils.hasHoneycomb()){
+            if (duration <= 0) {
+                setYCoordinate(storedYCoordinate);
+                return;
+            }
+            if (!isTabCarouselIsAnimating() && ViewHelper.getY(this) == storedYCoordinate) {
+                // Already in place, e.g. after the state was restored
+                return;
+            }
+            if (isTabCarouselIsAnimating() && mMetrics != null) {
+                // The running animation is retargeted, so it never ends
+                mMetrics.increment(CarouselMetrics.COUNTER_Y_RESTORES_CANCELLED);
+            }
+            getHeaderAnimator().animateTo(storedYCoordinate, duration);
+            if (mMetrics != null) {
+                mMetrics.increment(CarouselMetrics.COUNTER_Y_RESTORES_STARTED);
+            }
+            startHeaderLayer();
+        }
+    }
+
+    /**
+     * Moves this view to the given Y coordinate right away, cancelling any
+     * running Y animation.
+     * 
+     * @param y The Y coordinate to move to
+     */
+    private void setYCoordinate(float y) {
+        cancelYRestore();
+        if (ViewHelper.getY(this) != y) {
+            ViewHelper.setY(this, y);
+        }
+    }
+
+    /**
+     * @return The {@link HeaderAnimator} used for every timed Y restore. The
+     *         platform animator is used where available, NineOldAndroids
+     *         otherwise.
+     */
+    public HeaderAnimator getHeaderAnimator() {
+        if (mHeaderAnimator == null) {
             final Interpolator interpolator = AnimationUtils.loadInterpolator(getContext(),
                     android.R.anim.accelerate_decelerate_interpolator);
-    
-            final ObjectAnimator animator = ObjectAnimator.ofFloat(this, "y", storedYCoordinate);
-            animator.addListener(mTabCarouselAnimatorListener);
-            animator.setInterpolator(interpolator);
-            animator.setDuration(duration);
-            animator.start();
+            if (Utils.hasIceCreamSandwich()) {
+                mHeaderAnimator = new NativeHeaderAnimator(this, interpolator);
+            } else {
+                mHeaderAnimator = new CompatHeaderAnimator(this, interpolator);
+            }
+        }
+        return mHeaderAnimator;
+    }
+
+    /**
+     * Replaces the animation backend used for timed Y restores
+     * 
+     * @param headerAnimator The {@link HeaderAnimator} to use, null to use the
+     *            default one
+     */
+    public void setHeaderAnimator(HeaderAnimator headerAnimator) {
+        if (mHeaderAnimator != null) {
+            cancelYRestore();
+            mHeaderAnimator.cancel();
+        }
+        mHeaderAnimator = headerAnimator;
+    }
+
+    /**
+     * Cancels the running Y restore animation, if any
+     */
+    private void cancelYRestore() {
+        if (isTabCarouselIsAnimating()) {
+            mHeaderAnimator.cancel();
+            if (mMetrics != null) {
+                mMetrics.increment(CarouselMetrics.COUNTER_Y_RESTORES_CANCELLED);
+            }
         }
     }
 
@@ -344,6 +790,22 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
         restoreYCoordinate(0, tabIndex);
     }
 
+    /**
+     * When enabled, the scroll deltas the touch events make during a frame
+     * are merged and sent to the {@link OnCarouselListener} once, on the next
+     * animation frame, rather than once for every scroll change. Fling and
+     * smooth scroll steps already run once per frame and are sent right away.
+     * 
+     * @param coalesce True to send at most one scroll update per frame, false
+     *            to send every scroll change right away
+     */
+    public void setCoalesceScrollEvents(boolean coalesce) {
+        if (!coalesce) {
+            flushPendingScroll();
+        }
+        mCoalesceScrollEvents = coalesce;
+    }
+
     /**
      * Used to propely call {@code #onMeasure(int, int)}
      * 
@@ -352,68 +814,184 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      */
     public void setUsesDualTabs(boolean yesOrNo) {
         mMultiTabs = yesOrNo;
+        requestLayout();
     }
 
     /**
-     * Set the given {@link OnCarouselListener} to handle carousel events
+     * Used to pick how the tabs are built
+     * 
+     * @param drawn True to use tabs drawing their image, scrim, label and dim
+     *            layer in one pass, false to use tabs made of child views.
+     *            Tabs drawing themselves have no image or label views.
      */
-    public void setListener(OnCarouselListener carouselListener) {
-        mCarouselListener = carouselListener;
+    public void setUseDrawnTabs(boolean drawn) {
+        mTabStrip.setTabLayout(drawn ? R.layout.carousel_tab_drawn : R.layout.carousel_tab);
     }
 
     /**
-     * Updates the tab selection
+     * Used to pick how the carousel is dragged
      * 
-     * @param position The index to update
+     * @param enabled True to drag through a lightweight scroller, calling
+     *            {@code #onScrollChanged(int, int, int, int)} once per touch
+     *            move, false to drag through the {@link HorizontalScrollView}
      */
-    public void setCurrentTab(int position) {
-        CarouselTab selected, deselected[] = new CarouselTab[MAX_TABS];
-        int j = 0;
-        for(int i = 0; i < mTabCount; i++){
-            if(i != position){
-                deselected[j++] = mTabs[i];
-            }
-        }
-        selected = mTabs[position];
-        selected.setSelected(true);
-        for(CarouselTab deselectedTab : deselected){
-            if(deselectedTab != null) deselectedTab.setSelected(false);
-        }
-        mCurrentTab = position;
+    public void setUseLightweightScroller(boolean enabled) {
+        mLightweightScroller = enabled;
     }
-    
+
     /**
-     * Initalizes the amount of tabs specified.
+     * Used to pick how tab taps are handled. The tabs are created again when
+     * this changes.
      * 
-     * @param amountOfTabs
+     * @param enabled True to resolve the tapped tab from the tab geometry and
+     *            draw its pressed state in the carousel, false to give each
+     *            tab its own touch interceptor overlay and click listener
      */
-    @SuppressLint("NewApi")
-    @SuppressWarnings("deprecation")
-    public void initializeTabs(int amountOfTabs){
-        mTabCount = amountOfTabs;
-        mTabWidthScreenFraction = 1f/mTabCount;
-        for(int i = 0; i < mTabCount; i++){
-            LinearLayout tabContainer = (LinearLayout) findViewById(R.id.carousel_tab_container);
-            LayoutInflater inflater = (LayoutInflater) getContext().getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-            View tab = inflater.inflate(R.layout.carousel_tab, null);
-            tab.setId(i);
-            WindowManager wm = (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
-            Display display = wm.getDefaultDisplay();
-            int containerWidth;
-            if(Utils.hasHoneycombMr2()){
-                Point tempPoint = new Point();
-                display.getSize(tempPoint);
-                containerWidth = tempPoint.x;
-            }else{
-                containerWidth = display.getWidth();
-            }
-            tabContainer.addView(tab, containerWidth/mTabCount, LayoutParams.MATCH_PARENT);
-            CarouselTab tablayout = (CarouselTab) findViewById(i);
-            mTabs[i] = tablayout;
-            mTabs[i].setOverlayOnClickListener(new TabClickListener(this, i));
+    public void setUseContainerHitTesting(boolean enabled) {
+        if (mContainerHitTesting == enabled) {
+            return;
+        }
+        mContainerHitTesting = enabled;
+        setPressedTab(CarouselTab.NO_INDEX);
+        mTabStrip.recreateTabs();
+    }
+
+    /**
+     * Used to turn the automatic hardware layers off, e.g. on devices short of
+     * texture memory. They are enabled by default.
+     * 
+     * @param enabled True to give the header and the tab images hardware
+     *            layers while they move, false to never use hardware layers
+     */
+    public void setHardwareLayersEnabled(boolean enabled) {
+        mHardwareLayersEnabled = enabled;
+        if (!enabled) {
+            releaseHeaderLayer();
+            releaseTabLayers();
+        }
+    }
+
+    /**
+     * @return True if the header and the tab images are given hardware layers
+     *         while they move, false otherwise
+     */
+    public boolean isHardwareLayersEnabled() {
+        return mHardwareLayersEnabled;
+    }
+
+    /**
+     * Called by the {@link BackScrollManager} when a list tied to this header
+     * starts or stops scrolling. The header keeps a hardware layer while the
+     * list scrolls it.
+     * 
+     * @param scrollState One of the {@link android.widget.AbsListView.OnScrollListener}
+     *            {@code SCROLL_STATE_} constants
+     */
+    public void setListScrollState(int scrollState) {
+        mListScrolling = scrollState != OnScrollListener.SCROLL_STATE_IDLE;
+        if (mListScrolling) {
+            startHeaderLayer();
+        } else if (!isTabCarouselIsAnimating()) {
+            releaseHeaderLayer();
+        }
+    }
+
+    /**
+     * Set the given {@link OnCarouselListener} to handle carousel events
+     */
+    public void setListener(OnCarouselListener carouselListener) {
+        mCarouselListener = carouselListener;
+    }
+
+    /**
+     * @return The {@link OnCarouselListener} handling the carousel events
+     */
+    public OnCarouselListener getListener() {
+        return mCarouselListener;
+    }
+
+    /**
+     * Enables the metrics of this carousel. They are disabled by default and
+     * cost a null check on each instrumented path while disabled.
+     * 
+     * @param metrics The {@link CarouselMetrics} to record to, null to
+     *            disable the metrics
+     */
+    public void setMetrics(CarouselMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /**
+     * @return The {@link CarouselMetrics} recorded to, null if the metrics
+     *         are disabled
+     */
+    public CarouselMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Updates the tab selection. Only the previously selected tab and the
+     * newly selected one are touched, tabs bound later pick up their state
+     * from {@code #mCurrentTab}.
+     * 
+     * @param position The index to update
+     */
+    public void setCurrentTab(int position) {
+        final int previousTab = mCurrentTab;
+        mCurrentTab = position;
+        if (previousTab != position) {
+            final CarouselTab deselected = mTabStrip.getTabAt(previousTab);
+            if (deselected != null) {
+                deselected.setSelected(false);
+            }
+        }
+        final CarouselTab selected = mTabStrip.getTabAt(position);
+        if (selected != null) {
+            selected.setSelected(true);
+        }
+        if (mScrollEngine.getAllowedHorizontalScrollLength() <= 0) {
+            // The carousel can't scroll, so dim and slide by the selection instead
+            mIndicatorPosition = position;
+            updateAlphaLayers();
+            invalidate();
         }
     }
     
+    /**
+     * Initalizes the amount of tabs specified. Only the tabs scrolled into
+     * view are inflated, so the amount of tabs isn't limited.
+     * 
+     * @param amountOfTabs
+     */
+    public void initializeTabs(int amountOfTabs){
+        mTabCount = amountOfTabs;
+        if (!isValidTab(mCurrentTab)) {
+            mCurrentTab = 0;
+        }
+        mTabStates = new TabState[mTabCount];
+        for (int i = 0; i < mTabCount; i++) {
+            mTabStates[i] = new TabState();
+        }
+        // Grow the stored Y coordinates now rather than while the list scrolls
+        if (mYCoordinates.length < mTabCount) {
+            final float[] yCoordinates = new float[mTabCount];
+            System.arraycopy(mYCoordinates, 0, yCoordinates, 0, mYCoordinateCount);
+            mYCoordinates = yCoordinates;
+        }
+        mTabStrip.setTabCount(mTabCount);
+        if (isValidTab(mPendingCurrentTab)) {
+            setCurrentTab(mPendingCurrentTab);
+        }
+        mPendingCurrentTab = CarouselTab.NO_INDEX;
+    }
+
+    /**
+     * @return The total amount of tabs
+     */
+    public int getTabCount() {
+        return mTabCount;
+    }
+    
     /**
      * Sets the label for a tab
      * 
@@ -421,11 +999,14 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      * @param label The string to set as the label
      */
     public void setLabel(int index, String label, boolean isSelected) {
-        for(int i = 0; i < mTabCount; i++){
-            if(i == index){
-                mTabs[i].setLabel(label);
-                mTabs[i].setSelected(isSelected);
-            }
+        if (!isValidTab(index)) {
+            return;
+        }
+        mTabStates[index].mLabel = label;
+        final CarouselTab tab = mTabStrip.getTabAt(index);
+        if (tab != null) {
+            tab.setLabel(label);
+            tab.setSelected(isSelected);
         }
     }
 
@@ -436,11 +1017,42 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      * @param resId The resource identifier of the the drawable
      */
     public void setImageResource(int index, int resId) {
-        for(int i = 0; i < mTabCount; i++){
-            if(i == index){
-                mTabs[i].setImageResource(resId);
-            }
+        if (!isValidTab(index)) {
+            return;
+        }
+        mTabStates[index].setImage(resId, null, null);
+        mTabStrip.rebindTab(index);
+    }
+
+    /**
+     * Decodes a drawable in the background, sampled to the size of the tab,
+     * and sets it as the content of the tab {@link ImageView}. Prefer this
+     * over {@code #setImageResource(int, int)} for large artwork.
+     * 
+     * @param index Which {@link ImageView}
+     * @param resId The resource identifier of the the drawable
+     */
+    public void setImageResourceAsync(int index, int resId) {
+        if (!isValidTab(index)) {
+            return;
+        }
+        mTabStates[index].setAsyncImage(resId, null);
+        mTabStrip.rebindTab(index);
+    }
+
+    /**
+     * Decodes an image in the background, sampled to the size of the tab, and
+     * sets it as the content of the tab {@link ImageView}
+     * 
+     * @param index Which {@link ImageView}
+     * @param uri The {@link Uri} of the image
+     */
+    public void setImageUri(int index, Uri uri) {
+        if (!isValidTab(index)) {
+            return;
         }
+        mTabStates[index].setAsyncImage(0, uri);
+        mTabStrip.rebindTab(index);
     }
 
     /**
@@ -450,11 +1062,11 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      * @param drawable The {@link Drawable} to set
      */
     public void setImageDrawable(int index, Drawable drawable) {
-        for(int i = 0; i < mTabCount; i++){
-            if(i == index){
-                mTabs[i].setImageDrawable(drawable);
-            }
+        if (!isValidTab(index)) {
+            return;
         }
+        mTabStates[index].setImage(0, drawable, null);
+        mTabStrip.rebindTab(index);
     }
 
     /**
@@ -464,41 +1076,41 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      * @param bm The {@link Bitmap} to set
      */
     public void setImageBitmap(int index, Bitmap bm) {
-        for(int i = 0; i < mTabCount; i++){
-            if(i == index){
-                mTabs[i].setImageBitmap(bm);
-            }
+        if (!isValidTab(index)) {
+            return;
         }
+        mTabStates[index].setImage(0, null, bm);
+        mTabStrip.rebindTab(index);
     }
 
     /**
      * Used to return the {@link ImageView} from one of the tabs
      * 
      * @param index The index returning the {@link ImageView}
-     * @return The {@link ImageView} from one of the tabs
+     * @return The {@link ImageView} from one of the tabs, or null if the tab
+     *         is currently scrolled out of view or draws itself
      */
     public ImageView getImage(int index) {
-        for(int i = 0; i < mTabCount; i++){
-            if(i == index){
-                return mTabs[i].getImage();
-            }
+        if (!isValidTab(index)) {
+            throw new IllegalStateException("Invalid tab position " + index);
         }
-        throw new IllegalStateException("Invalid tab position " + index);
+        final CarouselTab tab = mTabStrip.getTabAt(index);
+        return tab != null ? tab.getImage() : null;
     }
 
     /**
      * Used to return the label from one of the tabs
      * 
      * @param index The index returning the label
-     * @return The label from one of the tabs
+     * @return The label from one of the tabs, or null if the tab is currently
+     *         scrolled out of view or draws itself
      */
     public TextView getLabel(int index) {
-        for(int i = 0; i < mTabCount; i++){
-            if(i == index){
-                return mTabs[i].getLabel();
-            }
+        if (!isValidTab(index)) {
+            throw new IllegalStateException("Invalid tab position " + index);
         }
-        throw new IllegalStateException("Invalid tab position " + index);
+        final CarouselTab tab = mTabStrip.getTabAt(index);
+        return tab != null ? tab.getLabel() : null;
     }
 
     /**
@@ -508,14 +1120,63 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      * @param tabIndex The tab index use to return the Y value
      */
     public float getStoredYCoordinateForTab(int tabIndex) {
-        return Y_COORDINATE[tabIndex];
+        return tabIndex < mYCoordinateCount ? mYCoordinates[tabIndex] : 0f;
     }
 
     /**
      * Returns the number of pixels that this view can be scrolled horizontally
      */
     public int getAllowedHorizontalScrollLength() {
-        return mAllowedHorizontalScrollLength;
+        return mScrollEngine.getAllowedHorizontalScrollLength();
+    }
+
+    /**
+     * Scrolls smoothly to the given position. Unlike
+     * {@code #smoothScrollTo(int, int)}, {@code #isScrolling()} tells when it
+     * ends.
+     * 
+     * @param x The position to scroll to
+     */
+    public void animateScrollTo(int x) {
+        mScroller.smoothScrollTo(x);
+    }
+
+    /**
+     * @return True while {@code #animateScrollTo(int)} scrolls the carousel
+     */
+    public boolean isScrolling() {
+        return mScroller.isScrolling();
+    }
+
+    /**
+     * @return The number of pixels the carousel can be scrolled horizontally
+     */
+    public int getMaxScrollX() {
+        return mScroller.getMaxScrollX();
+    }
+
+    /**
+     * Returns the horizontal velocity of the finger when it was last lifted
+     * from the carousel, in pixels per second
+     */
+    public float getTouchUpVelocity() {
+        return mScroller.getTouchUpVelocity();
+    }
+
+    /**
+     * Returns the horizontal scroll position scaled to the listener's range,
+     * without rounding it to a whole pixel
+     */
+    public float getScaledScrollX() {
+        return mScrollEngine.getScaledScroll(getScrollX());
+    }
+
+    /**
+     * Returns the tab geometry and the horizontal scroll math of this
+     * carousel
+     */
+    public CarouselScrollEngine getScrollEngine() {
+        return mScrollEngine;
     }
 
     /**
@@ -526,6 +1187,72 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
         return mAllowedVerticalScrollLength;
     }
 
+    /**
+     * @param index The tab index to check
+     * @return True if the index refers to an initialized tab, false otherwise
+     */
+    private boolean isValidTab(int index) {
+        return index >= 0 && index < mTabCount;
+    }
+
+    /**
+     * Reads the carousel dimensions from the resources
+     */
+    private void loadDimensions() {
+        final Resources res = getResources();
+        // Height of the label
+        mTabDisplayLabelHeight = res.getDimensionPixelSize(R.dimen.carousel_label_height);
+        // Height of the image
+        mTabDisplayImageHeight = res.getDimensionPixelSize(R.dimen.carousel_image_height);
+        // Add 1 dip of separation between the tabs
+        mSeperatorPixels = (int) (TypedValue.applyDimension(
+                TypedValue.COMPLEX_UNIT_DIP, 1, res.getDisplayMetrics()) + 0.5f);
+        // The selection indicator
+        mIndicatorHeight = res.getDimensionPixelSize(R.dimen.carousel_indicator_height);
+        if (!mIndicatorColorSet) {
+            mIndicatorPaint.setColor(res.getColor(R.color.carousel_indicator));
+        }
+    }
+
+    /**
+     * @return The tab position of the selection indicator, including the
+     *         offset into the next tab
+     */
+    private float getIndicatorPosition() {
+        if (mScrollEngine.getAllowedHorizontalScrollLength() <= 0) {
+            return mIndicatorPosition;
+        }
+        return mScrollEngine.getTabPosition(getScrollX(), mCurrentTab);
+    }
+
+    /**
+     * Computes the size of the carousel and its child and the scroll bounds,
+     * then stores them in {@code #mMeasureCache}.
+     * 
+     * @param widthMeasureSpec The width requirements imposed by the parent
+     * @param heightMeasureSpec The height requirements imposed by the parent
+     */
+    private void computeMeasurements(int widthMeasureSpec, int heightMeasureSpec) {
+        final int screenWidth = MeasureSpec.getSize(widthMeasureSpec);
+        // Compute the tab width and the scroll bounds
+        mScrollEngine.setGeometry(screenWidth, mTabCount, mSeperatorPixels, mMultiTabs);
+
+        final int tabHeight = mTabDisplayLabelHeight + mTabDisplayImageHeight;
+        mAllowedVerticalScrollLength = tabHeight - mTabDisplayLabelHeight;
+
+        final MeasureCache cache = mMeasureCache;
+        cache.mWidthMeasureSpec = widthMeasureSpec;
+        cache.mHeightMeasureSpec = heightMeasureSpec;
+        cache.mTabCount = mTabCount;
+        cache.mMultiTabs = mMultiTabs;
+        cache.mTabWidth = mScrollEngine.getTabWidth();
+        cache.mChildWidthSpec = measureExact(mScrollEngine.getChildWidth());
+        cache.mChildHeightSpec = measureExact(tabHeight);
+        cache.mMeasuredWidth = resolveSize(screenWidth, widthMeasureSpec);
+        cache.mMeasuredHeight = resolveSize(tabHeight, heightMeasureSpec);
+        cache.mValid = true;
+    }
+
     /**
      * @param size The size of the measure specification
      * @return The measure specifiction based on {@link MeasureSpec.#EXACTLY}
@@ -534,54 +1261,510 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
         return MeasureSpec.makeMeasureSpec(size, MeasureSpec.EXACTLY);
     }
 
+    /**
+     * Sends the merged scroll update right away if one is waiting for the next
+     * frame
+     */
+    private void flushPendingScroll() {
+        if (mScrollDispatchPending) {
+            removeCallbacks(mDispatchScrollRunnable);
+            dispatchPendingScroll();
+        }
+    }
+
+    /**
+     * Sends the scroll deltas merged during the last frame to the
+     * {@link OnCarouselListener}
+     */
+    private void dispatchPendingScroll() {
+        mScrollDispatchPending = false;
+        dispatchScrollChanged(mPendingScrollX, mPendingScrollY, mPendingOldScrollX,
+                mPendingOldScrollY);
+    }
+
+    /**
+     * Sends a scaled scroll change to the {@link OnCarouselListener} and dims
+     * the tabs accordingly
+     */
+    private void dispatchScrollChanged(int l, int t, int oldl, int oldt) {
+        final long start = startTimer();
+        mCarouselListener.onCarouselScrollChanged(l, t, oldl, oldt);
+        if (mMetrics != null) {
+            mMetrics.increment(CarouselMetrics.COUNTER_SCROLL_EVENTS_DISPATCHED);
+            mMetrics.record(CarouselMetrics.HISTOGRAM_LISTENER, start);
+        }
+        updateAlphaLayers();
+    }
+
+    /**
+     * Sends a tab tap to the {@link OnCarouselListener}
+     * 
+     * @param index The index of the tab tapped
+     */
+    private void dispatchTabSelected(int index) {
+        final long start = startTimer();
+        mCarouselListener.onTabSelected(index);
+        recordTime(CarouselMetrics.HISTOGRAM_LISTENER, start);
+    }
+
+    /**
+     * @param x The X coordinate in this view
+     * @param y The Y coordinate in this view
+     * @return The index of the tab under the point if it can be tapped, or
+     *         {@code CarouselTab#NO_INDEX}. The selected tab can't be tapped.
+     */
+    private int getTabIndexAt(float x, float y) {
+        if (getChildCount() == 0) {
+            return CarouselTab.NO_INDEX;
+        }
+        final int stripTop = getChildAt(0).getTop() + mTabStrip.getTop();
+        if (y < stripTop || y >= stripTop + mTabStrip.getHeight()) {
+            return CarouselTab.NO_INDEX;
+        }
+        final int index = mScrollEngine.getTabIndexAt((int) x + getScrollX());
+        if (index < 0 || index == mCurrentTab) {
+            return CarouselTab.NO_INDEX;
+        }
+        return index;
+    }
+
+    /**
+     * Draws the given tab as pressed while hit testing in the carousel
+     * 
+     * @param index The index of the pressed tab, or
+     *            {@code CarouselTab#NO_INDEX} for none
+     */
+    private void setPressedTab(int index) {
+        removeCallbacks(mUnpressRunnable);
+        if (mPressedTab == index) {
+            return;
+        }
+        mPressedTab = index;
+        if (index != CarouselTab.NO_INDEX && mPressedDrawable == null) {
+            final int resId = Utils.getSelectableItemBackground(getContext().getTheme());
+            if (resId != 0) {
+                mPressedDrawable = getResources().getDrawable(resId);
+                mPressedDrawable.setCallback(this);
+            }
+        }
+        if (mPressedDrawable != null) {
+            mPressedDrawable.setState(index != CarouselTab.NO_INDEX ? PRESSED_ENABLED_STATE_SET
+                    : ENABLED_STATE_SET);
+        }
+        invalidate();
+    }
+
+    /**
+     * Gives this view a hardware layer while it moves vertically
+     */
+    private void startHeaderLayer() {
+        if (mHeaderLayerActive || !mHardwareLayersEnabled || !Utils.canUseHardwareLayer(this)) {
+            return;
+        }
+        mHeaderLayerActive = true;
+        mHeaderLayerStart = startTimer();
+        ViewCompat.setLayerType(this, ViewCompat.LAYER_TYPE_HARDWARE, null);
+        if (mMetrics != null) {
+            mMetrics.increment(CarouselMetrics.COUNTER_HARDWARE_LAYERS);
+        }
+        // Release the layer once the animation ends
+        ViewCompat.postOnAnimation(this, mHeaderLayerCheck);
+    }
+
+    /**
+     * Releases the hardware layer of this view, if any
+     */
+    private void releaseHeaderLayer() {
+        removeCallbacks(mHeaderLayerCheck);
+        if (!mHeaderLayerActive) {
+            return;
+        }
+        mHeaderLayerActive = false;
+        ViewCompat.setLayerType(this, ViewCompat.LAYER_TYPE_NONE, null);
+        recordTime(CarouselMetrics.HISTOGRAM_HEADER_LAYER, mHeaderLayerStart);
+    }
+
+    /**
+     * Gives the bound tab images hardware layers while the carousel scrolls
+     * horizontally
+     */
+    private void startTabLayers() {
+        if (!mHardwareLayersEnabled || !Utils.canUseHardwareLayer(this)) {
+            return;
+        }
+        mTabLayersActive = true;
+        mTabLayersStart = startTimer();
+        setTabLayersEnabled(true);
+        if (mMetrics != null) {
+            mMetrics.increment(CarouselMetrics.COUNTER_HARDWARE_LAYERS);
+        }
+        postDelayed(mTabLayersCheck, TAB_LAYERS_RELEASE_DELAY);
+    }
+
+    /**
+     * Releases the hardware layers of the tab images, if any
+     */
+    private void releaseTabLayers() {
+        removeCallbacks(mTabLayersCheck);
+        if (!mTabLayersActive) {
+            return;
+        }
+        mTabLayersActive = false;
+        setTabLayersEnabled(false);
+        recordTime(CarouselMetrics.HISTOGRAM_TAB_LAYERS, mTabLayersStart);
+    }
+
+    /**
+     * @param enabled True to give the bound tab images hardware layers, false
+     *            to release them
+     */
+    private void setTabLayersEnabled(boolean enabled) {
+        for (int i = mTabStrip.getFirstBoundTab(); i <= mTabStrip.getLastBoundTab(); i++) {
+            final CarouselTab tab = mTabStrip.getTabAt(i);
+            if (tab != null) {
+                tab.setImageLayerEnabled(enabled);
+            }
+        }
+    }
+
+    /**
+     * @return The start time of a timed section, 0 while metrics are disabled
+     */
+    private long startTimer() {
+        return mMetrics != null ? CarouselMetrics.now() : 0;
+    }
+
+    /**
+     * Records the time elapsed since the start of a timed section
+     * 
+     * @param histogram One of the {@code CarouselMetrics#HISTOGRAM_} constants
+     * @param start The start time returned by {@code #startTimer()}
+     */
+    private void recordTime(int histogram, long start) {
+        if (mMetrics != null) {
+            mMetrics.record(histogram, start);
+        }
+    }
+
     /**
      * Sets the correct alpha layers over the tabs.
      */
     private void updateAlphaLayers() {
-        float alpha = mLastScrollPosition * MAX_ALPHA / mAllowedHorizontalScrollLength;
-        alpha = Utils.clamp(alpha, 0.0f, 1.0f);
+        final float position = mScrollEngine.getTabPosition(getScrollX(), mCurrentTab);
+        for (int i = mTabStrip.getFirstBoundTab(); i <= mTabStrip.getLastBoundTab(); i++) {
+            final CarouselTab tab = mTabStrip.getTabAt(i);
+            if (tab != null) {
+                tab.setAlphaLayerValue(CarouselScrollEngine.getTabAlpha(i, position));
+            }
+        }
     }
 
     /**
-     * This listener keeps track of whether the tab carousel animation is
-     * currently going on or not, in order to prevent other simultaneous changes
-     * to the Y position of the tab carousel which can cause flicker.
+     * Sends the merged scroll update once per animation frame
      */
-    private final AnimatorListener mTabCarouselAnimatorListener = new AnimatorListener() {
+    private final Runnable mDispatchScrollRunnable = new Runnable() {
 
         /**
          * {@inheritDoc}
          */
         @Override
-        public void onAnimationCancel(Animator animation) {
-            mTabCarouselIsAnimating = false;
+        public void run() {
+            if (mScrollDispatchPending) {
+                dispatchPendingScroll();
+            }
         }
+    };
+
+    /**
+     * Releases the header layer once the header stops moving
+     */
+    private final Runnable mHeaderLayerCheck = new Runnable() {
 
         /**
          * {@inheritDoc}
          */
         @Override
-        public void onAnimationEnd(Animator animation) {
-            mTabCarouselIsAnimating = false;
+        public void run() {
+            if (isTabCarouselIsAnimating()) {
+                ViewCompat.postOnAnimation(CarouselContainer.this, this);
+            } else if (!mListScrolling) {
+                releaseHeaderLayer();
+            }
         }
+    };
+
+    /**
+     * Releases the tab image layers once the carousel stopped scrolling for
+     * {@code #TAB_LAYERS_RELEASE_DELAY}
+     */
+    private final Runnable mTabLayersCheck = new Runnable() {
 
         /**
          * {@inheritDoc}
          */
         @Override
-        public void onAnimationRepeat(Animator animation) {
-            mTabCarouselIsAnimating = true;
+        public void run() {
+            final long idle = SystemClock.uptimeMillis() - mLastHorizontalScrollTime;
+            if (idle < TAB_LAYERS_RELEASE_DELAY) {
+                postDelayed(this, TAB_LAYERS_RELEASE_DELAY - idle);
+            } else {
+                releaseTabLayers();
+            }
         }
+    };
+
+    /**
+     * Clears the pressed state once a tap was shown long enough
+     */
+    private final Runnable mUnpressRunnable = new Runnable() {
 
         /**
          * {@inheritDoc}
          */
         @Override
-        public void onAnimationStart(Animator animation) {
-            mTabCarouselIsAnimating = true;
+        public void run() {
+            setPressedTab(CarouselTab.NO_INDEX);
         }
     };
 
+    /**
+     * Creates the tabs scrolled into view and binds them to their state
+     */
+    private final CarouselTabStrip.TabBinder mTabBinder = new CarouselTabStrip.TabBinder() {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onCreateTab(CarouselTab tab) {
+            if (mContainerHitTesting) {
+                // Taps are resolved by the carousel, no overlay views needed
+                tab.setOverlayEnabled(false);
+            } else {
+                tab.setOverlayOnClickListener(new TabClickListener(CarouselContainer.this, tab));
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onBindTab(CarouselTab tab, int index) {
+            final long start = startTimer();
+            mTabStates[index].bind(tab);
+            tab.setImageLayerEnabled(mTabLayersActive);
+            tab.setSelected(index == mCurrentTab);
+            tab.setAlphaLayerValue(CarouselScrollEngine.getTabAlpha(index,
+                    mScrollEngine.getTabPosition(getScrollX(), mCurrentTab)));
+            recordTime(CarouselMetrics.HISTOGRAM_TAB_BIND, start);
+        }
+    };
+
+    /** The result of a measure pass, reused while its inputs are unchanged */
+    private static final class MeasureCache {
+
+        /**
+         * False until the first measure pass or after an invalidation
+         */
+        boolean mValid;
+
+        /**
+         * The width requirements the cache was computed for
+         */
+        int mWidthMeasureSpec;
+
+        /**
+         * The height requirements the cache was computed for
+         */
+        int mHeightMeasureSpec;
+
+        /**
+         * The amount of tabs the cache was computed for
+         */
+        int mTabCount;
+
+        /**
+         * The dual tab mode the cache was computed for
+         */
+        boolean mMultiTabs;
+
+        /**
+         * Width of a single tab
+         */
+        int mTabWidth;
+
+        /**
+         * Width measure specification of the child
+         */
+        int mChildWidthSpec;
+
+        /**
+         * Height measure specification of the child
+         */
+        int mChildHeightSpec;
+
+        /**
+         * Measured width of the carousel
+         */
+        int mMeasuredWidth;
+
+        /**
+         * Measured height of the carousel
+         */
+        int mMeasuredHeight;
+
+        /**
+         * @return True if the cache was computed for the given inputs, false
+         *         otherwise
+         */
+        boolean matches(int widthMeasureSpec, int heightMeasureSpec, int tabCount,
+                boolean multiTabs) {
+            return mValid && mWidthMeasureSpec == widthMeasureSpec
+                    && mHeightMeasureSpec == heightMeasureSpec && mTabCount == tabCount
+                    && mMultiTabs == multiTabs;
+        }
+
+        /**
+         * Forces the next measure pass to recompute the cache
+         */
+        void invalidate() {
+            mValid = false;
+        }
+    }
+
+    /** The selected tab and the stored Y coordinates of a carousel */
+    static final class SavedState extends BaseSavedState {
+
+        /**
+         * The selected tab
+         */
+        int mCurrentTab;
+
+        /**
+         * The stored Y coordinate of each tab
+         */
+        float[] mYCoordinates;
+
+        /**
+         * @param superState The state of the superclass
+         */
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        /**
+         * @param in The {@link Parcel} to read the state from
+         */
+        private SavedState(Parcel in) {
+            super(in);
+            mCurrentTab = in.readInt();
+            mYCoordinates = in.createFloatArray();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeInt(mCurrentTab);
+            out.writeFloatArray(mYCoordinates);
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR =
+                new Parcelable.Creator<SavedState>() {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+
+    /** The label and image of a tab, kept while the tab is not bound */
+    private static final class TabState {
+
+        /**
+         * The label of the tab
+         */
+        String mLabel;
+
+        /**
+         * The resource identifier of the image, 0 if none
+         */
+        int mImageResId;
+
+        /**
+         * The image {@link Drawable}, null if none
+         */
+        Drawable mImageDrawable;
+
+        /**
+         * The image {@link Bitmap}, null if none
+         */
+        Bitmap mImageBitmap;
+
+        /**
+         * The {@link Uri} of the image, null if none
+         */
+        Uri mImageUri;
+
+        /**
+         * True to decode the image in the background
+         */
+        boolean mDecodeAsync;
+
+        /**
+         * Replaces the image of the tab, only one source should be set
+         */
+        void setImage(int resId, Drawable drawable, Bitmap bm) {
+            mImageResId = resId;
+            mImageDrawable = drawable;
+            mImageBitmap = bm;
+            mImageUri = null;
+            mDecodeAsync = false;
+        }
+
+        /**
+         * Replaces the image of the tab by one decoded in the background,
+         * only one source should be set
+         */
+        void setAsyncImage(int resId, Uri uri) {
+            setImage(resId, null, null);
+            mImageUri = uri;
+            mDecodeAsync = true;
+        }
+
+        /**
+         * @param tab The {@link CarouselTab} to bind this state to
+         */
+        void bind(CarouselTab tab) {
+            tab.setLabel(mLabel);
+            if (mImageBitmap != null) {
+                tab.setImageBitmap(mImageBitmap);
+            } else if (mImageDrawable != null) {
+                tab.setImageDrawable(mImageDrawable);
+            } else if (mImageUri != null) {
+                tab.setImageUriAsync(mImageUri);
+            } else if (mDecodeAsync && mImageResId != 0) {
+                tab.setImageResourceAsync(mImageResId);
+            } else {
+                tab.setImageResource(mImageResId);
+            }
+        }
+    }
+
     /** When pressed, selects the corresponding tab */
     private static final class TabClickListener implements OnClickListener {
 
@@ -593,12 +1776,12 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
         /**
          * The {@link CarouselTab} being pressed
          */
-        private final int mTab;
+        private final CarouselTab mTab;
 
         /**
-         * @param tab The index of the tab pressed
+         * @param tab The tab pressed
          */
-        public TabClickListener(CarouselContainer carouselHeader, int tab) {
+        public TabClickListener(CarouselContainer carouselHeader, CarouselTab tab) {
             super();
             mReference = new WeakReference<CarouselContainer>(carouselHeader);
             mTab = tab;
@@ -609,7 +1792,7 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
          */
         @Override
         public void onClick(View v) {
-            mReference.get().mCarouselListener.onTabSelected(mTab);
+            mReference.get().dispatchTabSelected(mTab.getTabIndex());
         }
     }
 
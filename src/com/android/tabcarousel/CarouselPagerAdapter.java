@@ -18,6 +18,9 @@ package com.android.tabcarousel;
 
 import android.support.v4.view.ViewPager;
 import android.support.v4.view.ViewPager.OnPageChangeListener;
+import android.view.ViewConfiguration;
+
+import com.android.tabcarousel.core.CarouselMetrics;
 
 import java.lang.ref.WeakReference;
 
@@ -26,6 +29,22 @@ import java.lang.ref.WeakReference;
  */
 public class CarouselPagerAdapter implements OnPageChangeListener, OnCarouselListener {
 
+    /**
+     * The {@link ViewPager} follows the carousel through a fake drag
+     */
+    public static final int SYNC_MODE_FAKE_DRAG = 0;
+
+    /**
+     * The carousel offset is mapped straight to the {@link ViewPager} scroll
+     * offset, without synthesized touch events
+     */
+    public static final int SYNC_MODE_DIRECT = 1;
+
+    /**
+     * Duration of the header restore once the pager is idle
+     */
+    private static final int RESTORE_Y_DURATION = 75;
+
     /**
      * A reference the parent {@link ViewPager}
      */
@@ -36,6 +55,49 @@ public class CarouselPagerAdapter implements OnPageChangeListener, OnCarouselLis
      */
     private final CarouselContainer mCarousel;
 
+    /**
+     * Minimum touch velocity to settle on the next page rather than the
+     * nearest one
+     */
+    private final int mMinimumFlingVelocity;
+
+    /**
+     * The exact scaled carousel position last sent to the fake drag
+     */
+    private float mFakeDragX;
+
+    /**
+     * How the {@link ViewPager} follows the carousel
+     */
+    private int mSyncMode = SYNC_MODE_FAKE_DRAG;
+
+    /**
+     * True while the user drags the carousel in {@code #SYNC_MODE_DIRECT}
+     */
+    private boolean mDirectDragging = false;
+
+    /**
+     * True while the carousel settles on {@code #mSettleTargetPage} in
+     * {@code #SYNC_MODE_DIRECT}
+     */
+    private boolean mDirectSettling = false;
+
+    /**
+     * The page the carousel settles on
+     */
+    private int mSettleTargetPage;
+
+    /**
+     * The carousel scroll position matching {@code #mSettleTargetPage},
+     * clamped to the scroll range of the carousel
+     */
+    private int mSettleTargetX;
+
+    /**
+     * True while the {@link ViewPager} is moved to follow the carousel
+     */
+    private boolean mSyncingPager = false;
+
     /**
      * Constructor for <code>ViewPagerAdapter</code>
      * 
@@ -49,6 +111,21 @@ public class CarouselPagerAdapter implements OnPageChangeListener, OnCarouselLis
         viewPager.setOnPageChangeListener(this);
         mCarousel = carouselHeader;
         mCarousel.setListener(this);
+        mMinimumFlingVelocity = ViewConfiguration.get(carouselHeader.getContext())
+                .getScaledMinimumFlingVelocity();
+    }
+
+    /**
+     * Sets how the {@link ViewPager} follows the carousel while the user
+     * drags it
+     * 
+     * @param syncMode {@code #SYNC_MODE_FAKE_DRAG} or {@code #SYNC_MODE_DIRECT}
+     */
+    public void setSyncMode(int syncMode) {
+        if (syncMode != SYNC_MODE_FAKE_DRAG && syncMode != SYNC_MODE_DIRECT) {
+            throw new IllegalArgumentException("Unknown sync mode " + syncMode);
+        }
+        mSyncMode = syncMode;
     }
 
     /**
@@ -56,8 +133,9 @@ public class CarouselPagerAdapter implements OnPageChangeListener, OnCarouselLis
      */
     @Override
     public void onPageScrollStateChanged(int state) {
+        CarouselWorkScheduler.getInstance().setPagerScrollState(mCarousel, state);
         if (state == ViewPager.SCROLL_STATE_IDLE) {
-            mCarousel.restoreYCoordinate(75, mReference.get().getCurrentItem());
+            mCarousel.restoreYCoordinate(RESTORE_Y_DURATION, mReference.get().getCurrentItem());
         }
     }
 
@@ -66,13 +144,19 @@ public class CarouselPagerAdapter implements OnPageChangeListener, OnCarouselLis
      */
     @Override
     public void onPageScrolled(int position, float positionOffset, int positionOffsetPixels) {
-        if (mReference.get().isFakeDragging()) {
+        mCarousel.setIndicatorPosition(position + positionOffset);
+        if (mDirectSettling && !mCarousel.isScrolling()) {
+            // The settle was cut short, e.g. the carousel was detached
+            mDirectSettling = false;
+            setDirectScrollState(ViewPager.SCROLL_STATE_IDLE);
+        }
+        if (mReference.get().isFakeDragging() || mSyncingPager || mDirectDragging
+                || mDirectSettling) {
             return;
         }
 
-        final int scrollToX = (int) ((position + positionOffset) * mCarousel
-                .getAllowedHorizontalScrollLength());
-        mCarousel.scrollTo(scrollToX, 0);
+        mCarousel.scrollTo(mCarousel.getScrollEngine().getScrollXForPosition(
+                position + positionOffset), 0);
     }
 
     /**
@@ -80,6 +164,11 @@ public class CarouselPagerAdapter implements OnPageChangeListener, OnCarouselLis
      */
     @Override
     public void onPageSelected(int position) {
+        if (mSyncingPager) {
+            // The pager only follows the carousel, the page is selected once
+            // the carousel settles
+            return;
+        }
         mCarousel.setCurrentTab(position);
     }
 
@@ -88,8 +177,18 @@ public class CarouselPagerAdapter implements OnPageChangeListener, OnCarouselLis
      */
     @Override
     public void onTouchDown() {
-        if (!mReference.get().isFakeDragging()) {
-            mReference.get().beginFakeDrag();
+        if (mSyncMode == SYNC_MODE_DIRECT) {
+            mDirectSettling = false;
+            mDirectDragging = true;
+            setDirectScrollState(ViewPager.SCROLL_STATE_DRAGGING);
+            return;
+        }
+        if (!mReference.get().isFakeDragging() && mReference.get().beginFakeDrag()) {
+            mFakeDragX = mCarousel.getScaledScrollX();
+            final CarouselMetrics metrics = mCarousel.getMetrics();
+            if (metrics != null) {
+                metrics.increment(CarouselMetrics.COUNTER_FAKE_DRAGS);
+            }
         }
     }
 
@@ -98,6 +197,11 @@ public class CarouselPagerAdapter implements OnPageChangeListener, OnCarouselLis
      */
     @Override
     public void onTouchUp() {
+        if (mDirectDragging) {
+            mDirectDragging = false;
+            settleDirectDrag();
+            return;
+        }
         if (mReference.get().isFakeDragging()) {
             mReference.get().endFakeDrag();
         }
@@ -116,9 +220,109 @@ public class CarouselPagerAdapter implements OnPageChangeListener, OnCarouselLis
      */
     @Override
     public void onCarouselScrollChanged(int l, int t, int oldl, int oldt) {
+        if (mDirectDragging || mDirectSettling) {
+            scrollPagerToCarousel();
+            if (mDirectSettling
+                    && (mCarousel.getScrollX() == mSettleTargetX || !mCarousel.isScrolling())) {
+                finishDirectSettle();
+            }
+            return;
+        }
         if (mReference.get().isFakeDragging()) {
-            mReference.get().fakeDragBy(oldl - l);
+            // Drag by the exact distance so the sub-pixel remainder carries
+            // over to the next move instead of being truncated
+            final float x = mCarousel.getScaledScrollX();
+            mReference.get().fakeDragBy(mFakeDragX - x);
+            mFakeDragX = x;
         }
     }
 
+    /**
+     * @return The page position matching the current carousel offset
+     */
+    private float getCarouselPagePosition() {
+        return mCarousel.getScrollEngine().getTabPosition(mCarousel.getScrollX(),
+                mReference.get().getCurrentItem());
+    }
+
+    /**
+     * Scrolls the {@link ViewPager} to the offset matching the carousel. The
+     * current item follows the nearest page so the pages on both sides stay
+     * populated, without selecting it.
+     */
+    private void scrollPagerToCarousel() {
+        final ViewPager pager = mReference.get();
+        final int pageWidth = pager.getWidth() + pager.getPageMargin();
+        if (pageWidth <= 0) {
+            return;
+        }
+        final float position = getCarouselPagePosition();
+        final int nearestPage = Math.round(position);
+        mSyncingPager = true;
+        if (nearestPage != pager.getCurrentItem()) {
+            pager.setCurrentItem(nearestPage, false);
+        }
+        pager.scrollTo(Math.round(position * pageWidth), 0);
+        mSyncingPager = false;
+    }
+
+    /**
+     * Picks the page to settle on from the carousel offset and the touch
+     * velocity, then lets the carousel scroll there while the pager follows.
+     */
+    private void settleDirectDrag() {
+        final ViewPager pager = mReference.get();
+        final float position = getCarouselPagePosition();
+        // The content scrolls the opposite way of the finger
+        final float velocity = -mCarousel.getTouchUpVelocity();
+
+        int targetPage;
+        if (velocity > mMinimumFlingVelocity) {
+            targetPage = (int) Math.ceil(position);
+        } else if (velocity < -mMinimumFlingVelocity) {
+            targetPage = (int) Math.floor(position);
+        } else {
+            targetPage = Math.round(position);
+        }
+        final int lastPage = pager.getAdapter() != null ? pager.getAdapter().getCount() - 1 : 0;
+        targetPage = Math.max(0, Math.min(targetPage, lastPage));
+
+        mSettleTargetPage = targetPage;
+        // Compare against the position the carousel can actually reach
+        mSettleTargetX = Math.max(0, Math.min(mCarousel.getScrollEngine()
+                .getScrollXForPosition(targetPage), mCarousel.getMaxScrollX()));
+        mDirectSettling = true;
+        setDirectScrollState(ViewPager.SCROLL_STATE_SETTLING);
+        if (mCarousel.getScrollX() == mSettleTargetX) {
+            finishDirectSettle();
+        } else {
+            mCarousel.animateScrollTo(mSettleTargetX);
+        }
+    }
+
+    /**
+     * Aligns the {@link ViewPager} on the settled page
+     */
+    private void finishDirectSettle() {
+        mDirectSettling = false;
+        final ViewPager pager = mReference.get();
+        mSyncingPager = true;
+        pager.setCurrentItem(mSettleTargetPage, false);
+        mSyncingPager = false;
+        scrollPagerToCarousel();
+        mCarousel.setCurrentTab(mSettleTargetPage);
+        setDirectScrollState(ViewPager.SCROLL_STATE_IDLE);
+        mCarousel.restoreYCoordinate(RESTORE_Y_DURATION, mSettleTargetPage);
+    }
+
+    /**
+     * Reports the scroll state of a direct drag, which the {@link ViewPager}
+     * doesn't see
+     * 
+     * @param state One of the {@link ViewPager} scroll states
+     */
+    private void setDirectScrollState(int state) {
+        CarouselWorkScheduler.getInstance().setPagerScrollState(mCarousel, state);
+    }
+
 }
@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.content.Context;
+import android.support.v4.view.MotionEventCompat;
+import android.support.v4.view.VelocityTrackerCompat;
+import android.support.v4.view.ViewCompat;
+import android.support.v4.widget.ScrollerCompat;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.ViewConfiguration;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+
+/**
+ * The lightweight scroller of the {@link CarouselContainer}, built on
+ * {@link android.widget.OverScroller} and a {@link VelocityTracker}.
+ * <p>
+ * Once turned on with
+ * {@code CarouselContainer#setUseLightweightScroller(boolean)}, each drag
+ * step moves the carousel as soon as its touch event arrives, skipping the
+ * edge effects, focus-search scrolling and the twice-per-move
+ * {@code onScrollChanged()} of {@link android.widget.HorizontalScrollView}.
+ * Smooth scrolls are stepped once per animation frame. The velocity of the
+ * finger and the smooth settles are tracked here either way.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+final class CarouselScroller {
+
+    /**
+     * Duration of {@code #smoothScrollTo(int)}, in milliseconds
+     */
+    private static final int SMOOTH_SCROLL_DURATION = 250;
+
+    /**
+     * No pointer drives the drag
+     */
+    private static final int INVALID_POINTER = -1;
+
+    /**
+     * The scrolled carousel, holding the tab strip as its only child
+     */
+    private final ViewGroup mHost;
+
+    /**
+     * Runs the smooth scrolls, on {@link android.widget.OverScroller} where
+     * available
+     */
+    private final ScrollerCompat mScroller;
+
+    /**
+     * Distance a touch can wander before it is a drag
+     */
+    private final int mTouchSlop;
+
+    /**
+     * Maximum velocity of the finger, in pixels per second
+     */
+    private final int mMaximumVelocity;
+
+    /**
+     * Tracks the velocity of the current touch
+     */
+    private VelocityTracker mVelocityTracker;
+
+    /**
+     * The pointer driving the drag, the last one put down that is still down
+     */
+    private int mActivePointerId = INVALID_POINTER;
+
+    /**
+     * X coordinate of the last drag step, keeps the sub-pixel remainder
+     */
+    private float mLastMotionX;
+
+    /**
+     * True while the user drags the carousel
+     */
+    private boolean mIsBeingDragged = false;
+
+    /**
+     * Horizontal velocity of the finger when it was last lifted
+     */
+    private float mTouchUpVelocity;
+
+    /**
+     * True while {@code #mScrollFrame} is posted
+     */
+    private boolean mFramePosted = false;
+
+    /**
+     * True while {@code #mScrollFrame} scrolls the carousel
+     */
+    private boolean mApplyingFrame = false;
+
+    /**
+     * @param host The scrolled carousel
+     */
+    CarouselScroller(ViewGroup host) {
+        mHost = host;
+        final Context context = host.getContext();
+        mScroller = ScrollerCompat.create(context);
+        final ViewConfiguration configuration = ViewConfiguration.get(context);
+        mTouchSlop = configuration.getScaledTouchSlop();
+        mMaximumVelocity = configuration.getScaledMaximumFlingVelocity();
+    }
+
+    /**
+     * Follows every touch event before the carousel dispatches it
+     */
+    void onDispatchTouchEvent(MotionEvent ev) {
+        if (mVelocityTracker == null) {
+            mVelocityTracker = VelocityTracker.obtain();
+        }
+        mVelocityTracker.addMovement(ev);
+
+        switch (MotionEventCompat.getActionMasked(ev)) {
+            case MotionEvent.ACTION_DOWN:
+                mActivePointerId = MotionEventCompat.getPointerId(ev, 0);
+                mLastMotionX = ev.getX();
+                // Catch the carousel if it is still moving
+                mIsBeingDragged = !mScroller.isFinished();
+                stopScrolling();
+                break;
+            case MotionEventCompat.ACTION_POINTER_DOWN: {
+                // The new finger takes over the drag
+                final int index = MotionEventCompat.getActionIndex(ev);
+                mActivePointerId = MotionEventCompat.getPointerId(ev, index);
+                mLastMotionX = MotionEventCompat.getX(ev, index);
+                break;
+            }
+            case MotionEventCompat.ACTION_POINTER_UP:
+                onSecondaryPointerUp(ev);
+                break;
+            case MotionEvent.ACTION_UP:
+                mVelocityTracker.computeCurrentVelocity(1000, mMaximumVelocity);
+                mTouchUpVelocity = VelocityTrackerCompat.getXVelocity(mVelocityTracker,
+                        mActivePointerId);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Ends the touch once the carousel dispatched its last event
+     */
+    void onTouchEventDispatched(MotionEvent ev) {
+        final int action = MotionEventCompat.getActionMasked(ev);
+        if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            mActivePointerId = INVALID_POINTER;
+            mIsBeingDragged = false;
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+    }
+
+    /**
+     * @return True once the touch is a drag of the carousel
+     */
+    boolean onInterceptTouchEvent(MotionEvent ev) {
+        if (MotionEventCompat.getActionMasked(ev) == MotionEvent.ACTION_MOVE
+                && !mIsBeingDragged) {
+            final int index = MotionEventCompat.findPointerIndex(ev, mActivePointerId);
+            if (index >= 0) {
+                final float x = MotionEventCompat.getX(ev, index);
+                if (Math.abs(x - mLastMotionX) > mTouchSlop) {
+                    startDrag(x);
+                }
+            }
+        }
+        return mIsBeingDragged;
+    }
+
+    /**
+     * Drags the carousel. The up event is consumed by the carousel, the drag
+     * ends in {@code #onTouchEventDispatched(MotionEvent)} and the pager
+     * settles the carousel.
+     * 
+     * @return Always true, the carousel handles the whole touch
+     */
+    boolean onTouchEvent(MotionEvent ev) {
+        if (MotionEventCompat.getActionMasked(ev) == MotionEvent.ACTION_MOVE) {
+            final int index = MotionEventCompat.findPointerIndex(ev, mActivePointerId);
+            if (index >= 0) {
+                final float x = MotionEventCompat.getX(ev, index);
+                if (!mIsBeingDragged && Math.abs(x - mLastMotionX) > mTouchSlop) {
+                    startDrag(x);
+                }
+                if (mIsBeingDragged) {
+                    // Carry the sub-pixel remainder over to the next move
+                    final int deltaX = (int) (mLastMotionX - x);
+                    mLastMotionX -= deltaX;
+                    if (deltaX != 0) {
+                        mHost.scrollTo(mHost.getScrollX() + deltaX, mHost.getScrollY());
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scrolls the carousel smoothly
+     * 
+     * @param x The position to scroll to
+     */
+    void smoothScrollTo(int x) {
+        final int scrollX = mHost.getScrollX();
+        final int deltaX = Math.max(0, Math.min(x, getMaxScrollX())) - scrollX;
+        stopScrolling();
+        if (deltaX == 0) {
+            return;
+        }
+        mScroller.startScroll(scrollX, mHost.getScrollY(), deltaX, 0, SMOOTH_SCROLL_DURATION);
+        postScrollFrame();
+    }
+
+    /**
+     * @return The number of pixels the carousel can be scrolled horizontally
+     */
+    int getMaxScrollX() {
+        if (mHost.getChildCount() == 0) {
+            return 0;
+        }
+        return Math.max(0, mHost.getChildAt(0).getWidth() - mHost.getWidth());
+    }
+
+    /**
+     * @return True while a smooth scroll is running
+     */
+    boolean isScrolling() {
+        return !mScroller.isFinished();
+    }
+
+    /**
+     * @return True while a smooth scroll step of the current animation frame
+     *         scrolls the carousel
+     */
+    boolean isApplyingFrame() {
+        return mApplyingFrame;
+    }
+
+    /**
+     * @return The horizontal velocity of the finger when it was last lifted,
+     *         in pixels per second
+     */
+    float getTouchUpVelocity() {
+        return mTouchUpVelocity;
+    }
+
+    /**
+     * Stops scrolling once the carousel is detached
+     */
+    void onDetachedFromWindow() {
+        stopScrolling();
+        mHost.removeCallbacks(mScrollFrame);
+        mFramePosted = false;
+    }
+
+    /**
+     * Starts dragging the carousel
+     * 
+     * @param x The X coordinate the drag starts from
+     */
+    private void startDrag(float x) {
+        mIsBeingDragged = true;
+        mLastMotionX = x;
+        final ViewParent parent = mHost.getParent();
+        if (parent != null) {
+            parent.requestDisallowInterceptTouchEvent(true);
+        }
+    }
+
+    /**
+     * Hands the drag over to another finger if the one driving it is lifted
+     */
+    private void onSecondaryPointerUp(MotionEvent ev) {
+        final int pointerIndex = MotionEventCompat.getActionIndex(ev);
+        if (MotionEventCompat.getPointerId(ev, pointerIndex) == mActivePointerId) {
+            final int newPointerIndex = pointerIndex == 0 ? 1 : 0;
+            mActivePointerId = MotionEventCompat.getPointerId(ev, newPointerIndex);
+            mLastMotionX = MotionEventCompat.getX(ev, newPointerIndex);
+            // The velocity of the lifted finger doesn't carry over
+            mVelocityTracker.clear();
+        }
+    }
+
+    /**
+     * Stops the running smooth scroll
+     */
+    private void stopScrolling() {
+        if (!mScroller.isFinished()) {
+            mScroller.abortAnimation();
+        }
+    }
+
+    /**
+     * Applies the next smooth scroll step on the next animation frame
+     */
+    private void postScrollFrame() {
+        if (!mFramePosted) {
+            mFramePosted = true;
+            ViewCompat.postOnAnimation(mHost, mScrollFrame);
+        }
+    }
+
+    /**
+     * Moves the smooth scroll on by one frame
+     */
+    private final Runnable mScrollFrame = new Runnable() {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            mFramePosted = false;
+            if (mScroller.computeScrollOffset()) {
+                mApplyingFrame = true;
+                mHost.scrollTo(mScroller.getCurrX(), mHost.getScrollY());
+                mApplyingFrame = false;
+                if (!mScroller.isFinished()) {
+                    postScrollFrame();
+                }
+            }
+        }
+    };
+}
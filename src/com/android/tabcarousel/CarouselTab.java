@@ -18,7 +18,11 @@ package com.android.tabcarousel;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
 import android.view.View;
 import android.widget.ImageView;
@@ -27,11 +31,22 @@ import com.android.tabcarousel.R;
 
 /**
  * This class represents each tab in the {@link CarouselContainer}.
+ * <p>
+ * A tab inflated with its image, label, scrim and alpha layer views lays them
+ * out as usual. A tab inflated without child views, as in
+ * {@code R.layout.carousel_tab_drawn}, draws all of them itself in a single
+ * {@code #onDraw(Canvas)} instead; it then has no image or label views to
+ * return.
  * 
  * @author Andrew Neal (andrewdneal@gmail.com)
  */
 public class CarouselTab extends FrameLayoutWithOverlay {
 
+    /**
+     * Index used while the tab is not bound to a position
+     */
+    static final int NO_INDEX = -1;
+
     /**
      * Used to display the main images in the tabs of the carousel
      */
@@ -48,9 +63,51 @@ public class CarouselTab extends FrameLayoutWithOverlay {
     private View mAlphaLayer;
 
     /**
-     * Used to indicate which tab in selected
+     * Draws the whole tab when it has no child views, null otherwise
+     */
+    private TabPainter mPainter;
+
+    /**
+     * The position this tab is bound to in the {@link CarouselTabStrip}
+     */
+    private int mTabIndex = NO_INDEX;
+
+    /**
+     * The resource identifier of the image decoded in the background, 0 if
+     * none
+     */
+    private int mAsyncImageResId;
+
+    /**
+     * The {@link Uri} of the image decoded in the background, null if none
+     */
+    private Uri mAsyncImageUri;
+
+    /**
+     * The decode in flight, null if none
+     */
+    private TabImageLoader.Request mImageRequest;
+
+    /**
+     * The width the background image was last requested at
+     */
+    private int mRequestedImageWidth;
+
+    /**
+     * The height the background image was last requested at
+     */
+    private int mRequestedImageHeight;
+
+    /**
+     * The displayed image when it came from the image pipeline, released to
+     * the {@link TabBitmapPool} once replaced
      */
-    private View mColorstrip;
+    private Bitmap mPipelineBitmap;
+
+    /**
+     * True while the image view has a hardware layer
+     */
+    private boolean mImageLayer;
 
     /**
      * @param context The {@link Context} to use
@@ -67,28 +124,59 @@ public class CarouselTab extends FrameLayoutWithOverlay {
     protected void onFinishInflate() {
         super.onFinishInflate();
         // Initiate the tab
-        //mCarouselImage = (ImageView) findViewById(R.id.carousel_tab_image);
+        mCarouselImage = (ImageView) findViewById(R.id.carousel_tab_image);
         mLabel = (TextView) findViewById(R.id.carousel_tab_label);
         mAlphaLayer = findViewById(R.id.carousel_tab_alpha_overlay);
-        mColorstrip = findViewById(R.id.carousel_tab_colorstrip);
+        if (mLabel == null && mCarouselImage == null) {
+            // No inflated content, draw everything in one pass. The child
+            // count can't tell, the overlay of the frame is a child too.
+            mPainter = new TabPainter(this);
+            setWillNotDraw(false);
+            return;
+        }
         // Set the alpha layer
         setAlphaLayer(mAlphaLayer);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mPainter != null) {
+            mPainter.draw(canvas);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean verifyDrawable(Drawable who) {
+        return super.verifyDrawable(who) || mPainter != null && mPainter.verifyDrawable(who);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void setSelected(boolean selected) {
         super.setSelected(selected);
-        if (selected) {
-            mColorstrip.setVisibility(View.VISIBLE);
-            setOverlayClickable(false);
+        setOverlayClickable(!selected);
+        setSelectedState(selected);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setAlphaLayerValue(float alpha) {
+        if (mPainter != null) {
+            mPainter.setDimAlpha(alpha);
         } else {
-            mColorstrip.setVisibility(View.GONE);
-            setOverlayClickable(true);
+            super.setAlphaLayerValue(alpha);
         }
-        setSelectedState(selected);
     }
 
     /**
@@ -97,7 +185,11 @@ public class CarouselTab extends FrameLayoutWithOverlay {
      * @param label The string to set as the label
      */
     public void setLabel(String label) {
-        mLabel.setText(label);
+        if (mPainter != null) {
+            mPainter.setLabel(label);
+        } else {
+            mLabel.setText(label);
+        }
     }
 
     /**
@@ -106,7 +198,59 @@ public class CarouselTab extends FrameLayoutWithOverlay {
      * @param state True to select the label, false otherwise
      */
     public void setSelectedState(boolean state) {
-        mLabel.setSelected(state);
+        if (mLabel != null) {
+            mLabel.setSelected(state);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if ((mAsyncImageResId != 0 || mAsyncImageUri != null) && hasImageSize()) {
+            startImageRequest();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        // Keep the source, the image is shown again once attached
+        if (mImageRequest != null) {
+            mImageRequest.cancel();
+            mImageRequest = null;
+        }
+        showPipelineBitmap(null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (mPainter != null) {
+            mPainter.setSize(w, h);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
+        // Decode the background image again once the image view is resized
+        if ((mAsyncImageResId != 0 || mAsyncImageUri != null) && hasImageSize()
+                && (getImageWidth() != mRequestedImageWidth
+                || getImageHeight() != mRequestedImageHeight)) {
+            startImageRequest();
+        }
     }
 
     /**
@@ -115,7 +259,9 @@ public class CarouselTab extends FrameLayoutWithOverlay {
      * @param resId The resource identifier of the the drawable
      */
     public void setImageResource(int resId) {
-        mCarouselImage.setImageResource(resId);
+        cancelImageRequest();
+        showImageResource(resId);
+        releasePipelineBitmap();
     }
 
     /**
@@ -124,7 +270,9 @@ public class CarouselTab extends FrameLayoutWithOverlay {
      * @param bm The {@link Bitmap} to set
      */
     public void setImageBitmap(Bitmap bm) {
-        mCarouselImage.setImageBitmap(bm);
+        cancelImageRequest();
+        showImageBitmap(bm);
+        releasePipelineBitmap();
     }
 
     /**
@@ -133,39 +281,294 @@ public class CarouselTab extends FrameLayoutWithOverlay {
      * @param drawable The {@link Drawable} to set
      */
     public void setImageDrawable(Drawable drawable) {
-        mCarouselImage.setImageDrawable(drawable);
+        cancelImageRequest();
+        showImageDrawable(drawable);
+        releasePipelineBitmap();
+    }
+
+    /**
+     * Decodes a drawable in the background, sampled to the size of its image
+     * view, and sets it as the content of this ImageView once decoded
+     * 
+     * @param resId The resource identifier of the the drawable
+     */
+    public void setImageResourceAsync(int resId) {
+        setImageAsync(resId, null);
+    }
+
+    /**
+     * Decodes an image in the background, sampled to the size of its image
+     * view, and sets it as the content of this ImageView once decoded
+     * 
+     * @param uri The {@link Uri} of the image
+     */
+    public void setImageUriAsync(Uri uri) {
+        setImageAsync(0, uri);
+    }
+
+    /**
+     * Cancels the background decode of the image, if any
+     */
+    public void cancelImageRequest() {
+        mAsyncImageResId = 0;
+        mAsyncImageUri = null;
+        if (mImageRequest != null) {
+            mImageRequest.cancel();
+            mImageRequest = null;
+        }
+    }
+
+    /**
+     * Replaces the image by one decoded in the background. The decode starts
+     * once this tab has a size.
+     */
+    private void setImageAsync(int resId, Uri uri) {
+        cancelImageRequest();
+        mAsyncImageResId = resId;
+        mAsyncImageUri = uri;
+        if (hasImageSize()) {
+            startImageRequest();
+        } else {
+            showPipelineBitmap(null);
+        }
+    }
+
+    /**
+     * Shows the background image at the current size of the image view, from
+     * the {@link TabImageCache} if it was already decoded, otherwise by
+     * starting to decode it
+     */
+    private void startImageRequest() {
+        if (mImageRequest != null) {
+            mImageRequest.cancel();
+            mImageRequest = null;
+        }
+        final int width = getImageWidth();
+        final int height = getImageHeight();
+        mRequestedImageWidth = width;
+        mRequestedImageHeight = height;
+        final Bitmap cached = TabImageCache.getInstance(getContext()).acquire(
+                TabImageCache.getKey(mAsyncImageResId, mAsyncImageUri, width, height,
+                        TabImageCache.TRANSFORMATION_CENTER_CROP));
+        showPipelineBitmap(cached);
+        if (cached != null) {
+            return;
+        }
+        mImageRequest = TabImageLoader.getInstance(getContext()).load(this, mAsyncImageResId,
+                mAsyncImageUri, width, height, getImagePriority());
+    }
+
+    /**
+     * @return The width the background image is shown at, the width of the
+     *         image view or of this tab when it paints the image itself
+     */
+    private int getImageWidth() {
+        return mCarouselImage != null ? mCarouselImage.getWidth() : getWidth();
+    }
+
+    /**
+     * @return The height the background image is shown at, the height of the
+     *         image view or of this tab when it paints the image itself
+     */
+    private int getImageHeight() {
+        return mCarouselImage != null ? mCarouselImage.getHeight() : getHeight();
+    }
+
+    /**
+     * @return True once the background image has a size to be decoded at
+     */
+    private boolean hasImageSize() {
+        return getImageWidth() > 0 && getImageHeight() > 0;
+    }
+
+    /**
+     * Called when this tab scrolls in or out of the visible part of the strip
+     * 
+     * @param visible True if the tab is visible, false otherwise
+     */
+    void onVisibilityInStripChanged(boolean visible) {
+        if (mImageRequest != null) {
+            mImageRequest.setPriority(visible ? CarouselWorkScheduler.PRIORITY_VISIBLE
+                    : CarouselWorkScheduler.PRIORITY_PREFETCH);
+        }
+    }
+
+    /**
+     * @return The scheduling priority of the image decode, visible tabs first
+     */
+    private int getImagePriority() {
+        if (getParent() instanceof CarouselTabStrip
+                && !((CarouselTabStrip) getParent()).isTabVisible(mTabIndex)) {
+            return CarouselWorkScheduler.PRIORITY_PREFETCH;
+        }
+        return CarouselWorkScheduler.PRIORITY_VISIBLE;
+    }
+
+    /**
+     * Called on the main thread once a background decode finished
+     * 
+     * @param request The finished request
+     * @param bitmap The decoded image, already acquired for this tab in the
+     *            {@link TabBitmapPool}, null if it couldn't be decoded as a
+     *            bitmap
+     */
+    void onImageDecoded(TabImageLoader.Request request, Bitmap bitmap) {
+        if (request != mImageRequest) {
+            if (bitmap != null) {
+                TabBitmapPool.getInstance(getContext()).release(bitmap);
+            }
+            return;
+        }
+        mImageRequest = null;
+        if (bitmap != null) {
+            showPipelineBitmap(bitmap);
+        } else if (request.mUri == null) {
+            // Not a bitmap, e.g. a shape or a selector
+            showImageResource(request.mResId);
+            releasePipelineBitmap();
+        }
+    }
+
+    /**
+     * Cancels the background decode and stops showing the pipeline image so
+     * it can be reused while this tab waits in the scrap pool
+     */
+    void releaseImage() {
+        cancelImageRequest();
+        if (mPipelineBitmap != null) {
+            showPipelineBitmap(null);
+        }
+    }
+
+    /**
+     * Shows an image from the pipeline and releases the previous one
+     * 
+     * @param bitmap The image, already acquired for this tab, or null to show
+     *            nothing
+     */
+    private void showPipelineBitmap(Bitmap bitmap) {
+        if (bitmap != null) {
+            showImageBitmap(bitmap);
+        } else {
+            showImageDrawable(null);
+        }
+        releasePipelineBitmap();
+        mPipelineBitmap = bitmap;
+    }
+
+    /**
+     * Releases the pipeline image to the {@link TabBitmapPool}, once it is no
+     * longer displayed
+     */
+    private void releasePipelineBitmap() {
+        if (mPipelineBitmap != null) {
+            TabBitmapPool.getInstance(getContext()).release(mPipelineBitmap);
+            mPipelineBitmap = null;
+        }
     }
 
     public void setOnImageClickListner(OnClickListener onClickListener) {
-        mCarouselImage.setOnClickListener(onClickListener);
+        if (mPainter != null) {
+            setOnClickListener(onClickListener);
+        } else {
+            mCarouselImage.setOnClickListener(onClickListener);
+        }
+    }
+
+    /**
+     * Shows a drawable resource in the image view or the painted image
+     */
+    private void showImageResource(int resId) {
+        if (mPainter != null) {
+            mPainter.setImage(resId != 0 ? getResources().getDrawable(resId) : null);
+        } else {
+            mCarouselImage.setImageResource(resId);
+        }
+    }
+
+    /**
+     * Shows a bitmap in the image view or the painted image
+     */
+    private void showImageBitmap(Bitmap bm) {
+        if (mPainter != null) {
+            mPainter.setImage(bm != null ? new BitmapDrawable(getResources(), bm) : null);
+        } else {
+            mCarouselImage.setImageBitmap(bm);
+        }
+    }
+
+    /**
+     * Shows a drawable in the image view or the painted image
+     */
+    private void showImageDrawable(Drawable drawable) {
+        if (mPainter != null) {
+            mPainter.setImage(drawable);
+        } else {
+            mCarouselImage.setImageDrawable(drawable);
+        }
+    }
+
+    /**
+     * Gives the image view a hardware layer while the carousel animates, so
+     * moving and dimming the tab doesn't draw the image again. Tabs drawing
+     * themselves have no image view and are left as is.
+     * 
+     * @param enabled True to give the image view a hardware layer, false to
+     *            release it
+     */
+    void setImageLayerEnabled(boolean enabled) {
+        if (mCarouselImage == null || mImageLayer == enabled) {
+            return;
+        }
+        mImageLayer = enabled;
+        ViewCompat.setLayerType(mCarouselImage, enabled ? ViewCompat.LAYER_TYPE_HARDWARE
+                : ViewCompat.LAYER_TYPE_NONE, null);
+    }
+
+    /**
+     * @param tabIndex The position this tab is bound to
+     */
+    void setTabIndex(int tabIndex) {
+        mTabIndex = tabIndex;
+    }
+
+    /**
+     * @return The position this tab is bound to, or {@code #NO_INDEX}
+     */
+    int getTabIndex() {
+        return mTabIndex;
     }
 
     /**
-     * @return the mCarouselImage
+     * @return the mCarouselImage, null for a tab drawing itself
      */
     public ImageView getImage() {
         return mCarouselImage;
     }
 
     /**
-     * @return the mLabel
+     * @return the mLabel, null for a tab drawing itself
      */
     public TextView getLabel() {
         return mLabel;
     }
 
     /**
-     * @return the mAlphaLayer
+     * @return the mAlphaLayer, null for a tab drawing itself
      */
     public View getAlphaLayer() {
         return mAlphaLayer;
     }
 
     /**
-     * @return the mColorstrip
+     * @return Always null, the selection indicator is drawn by the
+     *         {@link CarouselContainer}
+     * @deprecated The indicator is no longer a view of the tab, color it with
+     *             {@link CarouselContainer#setIndicatorColor(int)}
      */
+    @Deprecated
     public View getColorstrip() {
-        return mColorstrip;
+        return null;
     }
 
 }
@@ -0,0 +1,417 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.util.SparseArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+
+/**
+ * The horizontal strip holding the tabs of a {@link CarouselContainer}.
+ * <p>
+ * Only the tabs intersecting the visible part of the strip, plus a small
+ * prefetch margin on each side, are bound to a {@link CarouselTab}. Tabs that
+ * scroll out of that window are detached and kept in a scrap pool so they can
+ * be rebound to another index without inflating a new view.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+public class CarouselTabStrip extends ViewGroup {
+
+    /**
+     * Number of tabs bound beyond each edge of the viewport
+     */
+    private static final int PREFETCH_TABS = 1;
+
+    /**
+     * The tabs currently bound, keyed by their index
+     */
+    private final SparseArray<CarouselTab> mActiveTabs = new SparseArray<CarouselTab>();
+
+    /**
+     * Detached tabs waiting to be rebound
+     */
+    private final ArrayList<CarouselTab> mScrapTabs = new ArrayList<CarouselTab>();
+
+    /**
+     * The layout inflated for each new tab
+     */
+    private int mTabLayout = R.layout.carousel_tab;
+
+    /**
+     * Used to create and bind the tabs
+     */
+    private TabBinder mTabBinder;
+
+    /**
+     * Total amount of tabs
+     */
+    private int mTabCount = 0;
+
+    /**
+     * Width of a single tab
+     */
+    private int mTabWidth = 0;
+
+    /**
+     * Space between two tabs
+     */
+    private int mSeparatorWidth = 0;
+
+    /**
+     * Left edge of the visible part of the strip
+     */
+    private int mViewportLeft = 0;
+
+    /**
+     * Width of the visible part of the strip
+     */
+    private int mViewportWidth = 0;
+
+    /**
+     * First bound tab index
+     */
+    private int mFirstBoundTab = 0;
+
+    /**
+     * Last bound tab index
+     */
+    private int mLastBoundTab = -1;
+
+    /**
+     * First tab index intersecting the viewport
+     */
+    private int mFirstVisibleTab = 0;
+
+    /**
+     * Last tab index intersecting the viewport
+     */
+    private int mLastVisibleTab = -1;
+
+    /**
+     * @param context The {@link Context} to use
+     * @param attrs The attributes of the XML tag that is inflating the view
+     */
+    public CarouselTabStrip(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int width = MeasureSpec.getSize(widthMeasureSpec);
+        final int height = MeasureSpec.getSize(heightMeasureSpec);
+        setMeasuredDimension(width, height);
+
+        final int childWidthSpec = MeasureSpec.makeMeasureSpec(mTabWidth, MeasureSpec.EXACTLY);
+        final int childHeightSpec = MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY);
+        for (int i = 0; i < mActiveTabs.size(); i++) {
+            mActiveTabs.valueAt(i).measure(childWidthSpec, childHeightSpec);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        updateVisibleTabs();
+        updateBoundTabs();
+        for (int i = 0; i < mActiveTabs.size(); i++) {
+            layoutTab(mActiveTabs.valueAt(i), mActiveTabs.keyAt(i));
+        }
+    }
+
+    /**
+     * @param tabBinder The {@link TabBinder} used to create and bind the tabs
+     */
+    public void setTabBinder(TabBinder tabBinder) {
+        mTabBinder = tabBinder;
+    }
+
+    /**
+     * Sets the layout inflated for each new tab. The bound and scrapped tabs
+     * are dropped.
+     *
+     * @param layoutResId The layout resource of a {@link CarouselTab}
+     */
+    public void setTabLayout(int layoutResId) {
+        if (mTabLayout == layoutResId) {
+            return;
+        }
+        mTabLayout = layoutResId;
+        recreateTabs();
+    }
+
+    /**
+     * Drops the bound and scrapped tabs, so every tab is inflated and created
+     * again during the next layout
+     */
+    public void recreateTabs() {
+        recycleAllTabs();
+        for (int i = 0; i < mScrapTabs.size(); i++) {
+            removeDetachedView(mScrapTabs.get(i), false);
+        }
+        mScrapTabs.clear();
+        requestLayout();
+    }
+
+    /**
+     * Sets the amount of tabs in the strip. All bound tabs are recycled.
+     *
+     * @param tabCount The total amount of tabs
+     */
+    public void setTabCount(int tabCount) {
+        recycleAllTabs();
+        mTabCount = tabCount;
+        requestLayout();
+    }
+
+    /**
+     * @return The total amount of tabs
+     */
+    public int getTabCount() {
+        return mTabCount;
+    }
+
+    /**
+     * Sets the size of the tabs, called while the {@link CarouselContainer} is
+     * being measured and before this strip is measured.
+     *
+     * @param tabWidth The width of a single tab
+     * @param separatorWidth The space between two tabs
+     */
+    public void setTabGeometry(int tabWidth, int separatorWidth) {
+        if (mTabWidth == tabWidth && mSeparatorWidth == separatorWidth) {
+            return;
+        }
+        mTabWidth = tabWidth;
+        mSeparatorWidth = separatorWidth;
+    }
+
+    /**
+     * Sets the visible part of the strip and binds the tabs that scrolled
+     * into it.
+     *
+     * @param left The left edge of the visible part of the strip
+     * @param width The width of the visible part of the strip
+     */
+    public void setViewport(int left, int width) {
+        if (mViewportLeft == left && mViewportWidth == width) {
+            return;
+        }
+        mViewportLeft = left;
+        mViewportWidth = width;
+        updateVisibleTabs();
+        updateBoundTabs();
+    }
+
+    /**
+     * @param index The index of the tab
+     * @return True if the tab intersects the visible part of the strip, false
+     *         if it is out of view or only bound ahead of time
+     */
+    public boolean isTabVisible(int index) {
+        return index >= mFirstVisibleTab && index <= mLastVisibleTab;
+    }
+
+    /**
+     * @param index The index of the tab
+     * @return The {@link CarouselTab} bound to the index, or null if the tab
+     *         is currently not bound
+     */
+    public CarouselTab getTabAt(int index) {
+        return mActiveTabs.get(index);
+    }
+
+    /**
+     * @return The index of the first bound tab
+     */
+    public int getFirstBoundTab() {
+        return mFirstBoundTab;
+    }
+
+    /**
+     * @return The index of the last bound tab
+     */
+    public int getLastBoundTab() {
+        return mLastBoundTab;
+    }
+
+    /**
+     * Binds the tab at the given index again if it is currently bound
+     *
+     * @param index The index of the tab to rebind
+     */
+    public void rebindTab(int index) {
+        final CarouselTab tab = mActiveTabs.get(index);
+        if (tab != null && mTabBinder != null) {
+            mTabBinder.onBindTab(tab, index);
+        }
+    }
+
+    /**
+     * Updates the range of tabs intersecting the viewport and tells the bound
+     * tabs whose visibility changed
+     */
+    private void updateVisibleTabs() {
+        final int stride = mTabWidth + mSeparatorWidth;
+        if (stride <= 0 || mViewportWidth <= 0) {
+            return;
+        }
+        final int first = mViewportLeft / stride;
+        final int last = Math.min(mTabCount - 1, (mViewportLeft + mViewportWidth - 1) / stride);
+        if (first == mFirstVisibleTab && last == mLastVisibleTab) {
+            return;
+        }
+        mFirstVisibleTab = first;
+        mLastVisibleTab = last;
+        for (int i = 0; i < mActiveTabs.size(); i++) {
+            mActiveTabs.valueAt(i).onVisibilityInStripChanged(isTabVisible(mActiveTabs.keyAt(i)));
+        }
+    }
+
+    /**
+     * Recycles the tabs that left the viewport and binds the ones that entered
+     * it.
+     */
+    private void updateBoundTabs() {
+        if (mTabCount == 0 || mTabWidth <= 0 || mViewportWidth <= 0 || mTabBinder == null) {
+            recycleAllTabs();
+            return;
+        }
+
+        final int stride = mTabWidth + mSeparatorWidth;
+        final int first = Math.max(0, mViewportLeft / stride - PREFETCH_TABS);
+        final int last = Math.min(mTabCount - 1, (mViewportLeft + mViewportWidth - 1) / stride
+                + PREFETCH_TABS);
+        if (first == mFirstBoundTab && last == mLastBoundTab) {
+            return;
+        }
+
+        // Recycle the tabs outside of the new window
+        for (int i = mActiveTabs.size() - 1; i >= 0; i--) {
+            final int index = mActiveTabs.keyAt(i);
+            if (index < first || index > last) {
+                recycleTab(mActiveTabs.valueAt(i));
+                mActiveTabs.removeAt(i);
+            }
+        }
+
+        // Bind the tabs that entered it
+        for (int index = first; index <= last; index++) {
+            if (mActiveTabs.get(index) == null) {
+                bindTab(index);
+            }
+        }
+        mFirstBoundTab = first;
+        mLastBoundTab = last;
+    }
+
+    /**
+     * Attaches a recycled or newly inflated tab and binds it to the given
+     * index.
+     *
+     * @param index The index to bind
+     */
+    private void bindTab(int index) {
+        final CarouselTab tab;
+        final int scrapCount = mScrapTabs.size();
+        if (scrapCount > 0) {
+            tab = mScrapTabs.remove(scrapCount - 1);
+            attachViewToParent(tab, -1, tab.getLayoutParams());
+        } else {
+            tab = (CarouselTab) LayoutInflater.from(getContext()).inflate(mTabLayout, this,
+                    false);
+            mTabBinder.onCreateTab(tab);
+            addViewInLayout(tab, -1, tab.getLayoutParams(), true);
+        }
+        tab.setTabIndex(index);
+        mTabBinder.onBindTab(tab, index);
+        mActiveTabs.put(index, tab);
+
+        tab.measure(MeasureSpec.makeMeasureSpec(mTabWidth, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(getMeasuredHeight(), MeasureSpec.EXACTLY));
+        layoutTab(tab, index);
+        tab.invalidate();
+    }
+
+    /**
+     * Detaches the given tab and moves it to the scrap pool
+     *
+     * @param tab The {@link CarouselTab} to recycle
+     */
+    private void recycleTab(CarouselTab tab) {
+        tab.releaseImage();
+        tab.setImageLayerEnabled(false);
+        detachViewFromParent(tab);
+        tab.setTabIndex(CarouselTab.NO_INDEX);
+        mScrapTabs.add(tab);
+        invalidate();
+    }
+
+    /**
+     * Recycles every bound tab
+     */
+    private void recycleAllTabs() {
+        for (int i = 0; i < mActiveTabs.size(); i++) {
+            recycleTab(mActiveTabs.valueAt(i));
+        }
+        mActiveTabs.clear();
+        mFirstBoundTab = 0;
+        mLastBoundTab = -1;
+    }
+
+    /**
+     * Positions the given tab at its slot in the strip
+     *
+     * @param tab The {@link CarouselTab} to layout
+     * @param index The index the tab is bound to
+     */
+    private void layoutTab(View tab, int index) {
+        final int left = index * (mTabWidth + mSeparatorWidth);
+        tab.layout(left, 0, left + tab.getMeasuredWidth(), tab.getMeasuredHeight());
+    }
+
+    /**
+     * Used to create and bind the tabs of a {@link CarouselTabStrip}
+     */
+    public interface TabBinder {
+
+        /**
+         * Called once for every newly inflated tab
+         *
+         * @param tab The {@link CarouselTab} created
+         */
+        public void onCreateTab(CarouselTab tab);
+
+        /**
+         * Called each time a tab is bound to an index
+         *
+         * @param tab The {@link CarouselTab} to bind
+         * @param index The index the tab is bound to
+         */
+        public void onBindTab(CarouselTab tab, int index);
+    }
+}
@@ -0,0 +1,383 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.v4.view.ViewPager;
+import android.util.Log;
+import android.widget.AbsListView.OnScrollListener;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * A process-wide background work scheduler that follows the scrolling of the
+ * carousel screens.
+ * <p>
+ * Work runs in priority order, then in submission order. While a list tied to
+ * the header flings or the {@link ViewPager} is swiped, only
+ * {@code #PRIORITY_VISIBLE} work is started; everything else stays queued and
+ * resumes, in priority order, once scrolling goes idle. The
+ * {@link BackScrollManager} and the {@link CarouselPagerAdapter} feed the
+ * scroll states, so apps don't have to pause their own work while scrolling.
+ * <p>
+ * Each carousel screen reports its own state, so two screens don't overwrite
+ * each other's. A screen holds back work until it goes idle, until its
+ * carousel is detached, or at most {@code #SCROLL_TIMEOUT_MILLIS} after it
+ * started moving, so a list or pager removed mid-fling never stalls the work.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+public final class CarouselWorkScheduler {
+
+    private static final String TAG = "CarouselWorkScheduler";
+
+    /**
+     * Work needed by what is on screen right now
+     */
+    public static final int PRIORITY_VISIBLE = 0;
+
+    /**
+     * Work for what is about to scroll into view
+     */
+    public static final int PRIORITY_PREFETCH = 1;
+
+    /**
+     * Any other work
+     */
+    public static final int PRIORITY_BACKGROUND = 2;
+
+    /**
+     * Number of worker threads
+     */
+    private static final int WORKER_THREADS = 2;
+
+    /**
+     * Longest time a moving source holds back work without going idle
+     */
+    private static final long SCROLL_TIMEOUT_MILLIS = 3000;
+
+    /**
+     * Set while a list of the source flings
+     */
+    private static final int FLAG_LIST_FLINGING = 1;
+
+    /**
+     * Set while the pager of the source is dragged or settling
+     */
+    private static final int FLAG_PAGER_MOVING = 2;
+
+    /**
+     * The scheduler shared by every carousel
+     */
+    private static CarouselWorkScheduler sInstance;
+
+    /**
+     * The queued work, guarded by this scheduler
+     */
+    private final PriorityQueue<Task> mQueue = new PriorityQueue<Task>();
+
+    /**
+     * Orders the work of the same priority
+     */
+    private long mNextSequence;
+
+    /**
+     * The sources currently moving, guarded by this scheduler
+     */
+    private final IdentityHashMap<Object, ScrollSource> mScrollSources =
+            new IdentityHashMap<Object, ScrollSource>();
+
+    /**
+     * Starts the workers
+     */
+    private CarouselWorkScheduler() {
+        for (int i = 0; i < WORKER_THREADS; i++) {
+            final Thread worker = new Thread(mWorker, "CarouselWorkScheduler");
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * @return The scheduler shared by every carousel
+     */
+    public static synchronized CarouselWorkScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new CarouselWorkScheduler();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Queues work
+     * 
+     * @param work The work to run on a worker thread
+     * @param priority One of the {@code PRIORITY_} constants
+     * @return The {@link Task}, used to cancel or reprioritize the work
+     */
+    public synchronized Task submit(Runnable work, int priority) {
+        final Task task = new Task(work, priority, mNextSequence++);
+        mQueue.add(task);
+        notifyAll();
+        return task;
+    }
+
+    /**
+     * Follows the scroll state of a list tied to the header
+     * 
+     * @param source The screen of the list, usually its
+     *            {@link CarouselContainer}
+     * @param scrollState One of the {@link OnScrollListener} scroll states
+     */
+    public synchronized void setListScrollState(Object source, int scrollState) {
+        setMoving(source, FLAG_LIST_FLINGING, scrollState == OnScrollListener.SCROLL_STATE_FLING);
+    }
+
+    /**
+     * Follows the scroll state of a {@link ViewPager}
+     * 
+     * @param source The screen of the pager, usually its
+     *            {@link CarouselContainer}
+     * @param scrollState One of the {@link ViewPager} scroll states
+     */
+    public synchronized void setPagerScrollState(Object source, int scrollState) {
+        setMoving(source, FLAG_PAGER_MOVING, scrollState != ViewPager.SCROLL_STATE_IDLE);
+    }
+
+    /**
+     * Stops holding back work for a source, e.g. once its screen is gone
+     * 
+     * @param source The screen given to the scroll state setters
+     */
+    public synchronized void clearScrollState(Object source) {
+        if (mScrollSources.remove(source) != null) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Sets or clears a moving flag of a source
+     */
+    private void setMoving(Object source, int flag, boolean moving) {
+        ScrollSource state = mScrollSources.get(source);
+        if (moving) {
+            if (state == null) {
+                state = new ScrollSource();
+                mScrollSources.put(source, state);
+            }
+            if (state.mFlags == 0) {
+                state.mMovingSince = SystemClock.uptimeMillis();
+            }
+            state.mFlags |= flag;
+        } else if (state != null) {
+            state.mFlags &= ~flag;
+            if (state.mFlags == 0) {
+                mScrollSources.remove(source);
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * @return True while only {@code #PRIORITY_VISIBLE} work is started
+     */
+    public synchronized boolean isScrolling() {
+        return getScrollEndTime(SystemClock.uptimeMillis()) > 0;
+    }
+
+    /**
+     * Drops the sources that timed out
+     * 
+     * @param now The current uptime
+     * @return The uptime at which the last moving source times out, or 0 if
+     *         no source is moving
+     */
+    private long getScrollEndTime(long now) {
+        long endTime = 0;
+        final Iterator<ScrollSource> sources = mScrollSources.values().iterator();
+        while (sources.hasNext()) {
+            final long timeout = sources.next().mMovingSince + SCROLL_TIMEOUT_MILLIS;
+            if (timeout <= now) {
+                sources.remove();
+            } else {
+                endTime = Math.max(endTime, timeout);
+            }
+        }
+        return endTime;
+    }
+
+    /**
+     * @return The number of queued tasks
+     */
+    public synchronized int getQueuedCount() {
+        return mQueue.size();
+    }
+
+    /**
+     * Waits for the next task allowed to run
+     */
+    private synchronized Task takeNext() throws InterruptedException {
+        while (true) {
+            final Task next = mQueue.peek();
+            if (next == null) {
+                wait();
+                continue;
+            }
+            if (next.mPriority == PRIORITY_VISIBLE) {
+                return mQueue.poll();
+            }
+            final long now = SystemClock.uptimeMillis();
+            final long scrollEndTime = getScrollEndTime(now);
+            if (scrollEndTime == 0) {
+                return mQueue.poll();
+            }
+            // Wake up when the moving sources time out at the latest
+            wait(scrollEndTime - now);
+        }
+    }
+
+    /**
+     * Moves a queued task to another priority
+     */
+    private synchronized void reprioritize(Task task, int priority) {
+        if (task.mPriority == priority) {
+            return;
+        }
+        final boolean queued = mQueue.remove(task);
+        task.mPriority = priority;
+        if (queued) {
+            mQueue.add(task);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Drops a queued task
+     */
+    private synchronized void remove(Task task) {
+        mQueue.remove(task);
+    }
+
+    /**
+     * Runs the queued work
+     */
+    private final Runnable mWorker = new Runnable() {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            while (true) {
+                final Task task;
+                try {
+                    task = takeNext();
+                } catch (final InterruptedException e) {
+                    return;
+                }
+                if (task.mCancelled) {
+                    continue;
+                }
+                try {
+                    task.mWork.run();
+                } catch (final RuntimeException e) {
+                    // A failed task must not take the worker down with it
+                    Log.e(TAG, "Unable to run " + task.mWork, e);
+                }
+            }
+        }
+    };
+
+    /** The moving state of a source */
+    private static final class ScrollSource {
+
+        /**
+         * The {@code FLAG_} constants set for the source
+         */
+        private int mFlags;
+
+        /**
+         * When the source started moving
+         */
+        private long mMovingSince;
+    }
+
+    /** A piece of queued work */
+    public final class Task implements Comparable<Task> {
+
+        /**
+         * The work to run
+         */
+        private final Runnable mWork;
+
+        /**
+         * Orders the tasks of the same priority
+         */
+        private final long mSequence;
+
+        /**
+         * One of the {@code PRIORITY_} constants, guarded by the scheduler
+         */
+        private int mPriority;
+
+        /**
+         * Set once the work is no longer wanted
+         */
+        private volatile boolean mCancelled;
+
+        /**
+         * Constructor for <code>Task</code>
+         */
+        private Task(Runnable work, int priority, long sequence) {
+            mWork = work;
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        /**
+         * Drops the work if it hasn't started yet
+         */
+        public void cancel() {
+            mCancelled = true;
+            remove(this);
+        }
+
+        /**
+         * Moves the work to another priority if it hasn't started yet
+         * 
+         * @param priority One of the {@code PRIORITY_} constants
+         */
+        public void setPriority(int priority) {
+            reprioritize(this, priority);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int compareTo(Task another) {
+            if (mPriority != another.mPriority) {
+                return mPriority < another.mPriority ? -1 : 1;
+            }
+            return mSequence < another.mSequence ? -1 : mSequence == another.mSequence ? 0 : 1;
+        }
+    }
+}
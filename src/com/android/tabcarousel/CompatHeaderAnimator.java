@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.view.View;
+import android.view.animation.Interpolator;
+
+import com.nineoldandroids.animation.Animator;
+import com.nineoldandroids.animation.AnimatorListenerAdapter;
+import com.nineoldandroids.animation.ObjectAnimator;
+import com.nineoldandroids.util.FloatProperty;
+import com.nineoldandroids.util.Property;
+import com.nineoldandroids.view.ViewHelper;
+
+/**
+ * A {@link HeaderAnimator} running on NineOldAndroids, used where the
+ * platform's {@link android.view.ViewPropertyAnimator} isn't available. The Y
+ * coordinate is set through a typed property rather than by reflection.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+public class CompatHeaderAnimator extends AnimatorListenerAdapter implements HeaderAnimator {
+
+    /**
+     * Typed Y property of a {@link View}
+     */
+    private static final Property<View, Float> Y = new FloatProperty<View>("y") {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void setValue(View view, float value) {
+            ViewHelper.setY(view, value);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Float get(View view) {
+            return ViewHelper.getY(view);
+        }
+    };
+
+    /**
+     * The animator reused for every animation
+     */
+    private final ObjectAnimator mAnimator;
+
+    /**
+     * True while an animation is running
+     */
+    private boolean mRunning;
+
+    /**
+     * @param view The header to animate
+     * @param interpolator The interpolator used for every animation
+     */
+    public CompatHeaderAnimator(View view, Interpolator interpolator) {
+        mAnimator = ObjectAnimator.ofFloat(view, Y, 0f);
+        mAnimator.setInterpolator(interpolator);
+        mAnimator.addListener(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void animateTo(float y, long duration) {
+        mAnimator.cancel();
+        mAnimator.setFloatValues(y);
+        mAnimator.setDuration(duration);
+        mAnimator.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void cancel() {
+        mAnimator.cancel();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAnimationStart(Animator animation) {
+        mRunning = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAnimationEnd(Animator animation) {
+        mRunning = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAnimationCancel(Animator animation) {
+        mRunning = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAnimationRepeat(Animator animation) {
+        mRunning = true;
+    }
+}
@@ -17,6 +17,8 @@
 package com.android.tabcarousel;
 
 import android.content.Context;
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
 import android.util.AttributeSet;
 import android.view.View;
 import android.view.ViewGroup;
@@ -26,10 +28,33 @@ import android.widget.FrameLayout;
  * A {@link FrameLayout} whose contents are kept beneath an
  * {@link AlphaTouchInterceptorOverlay}. If necessary, you can specify your own
  * alpha-layer and manually manage its z-order.
+ * <p>
+ * The overlay is only created once it is first used. When it is disabled, the
+ * alpha layer is dimmed directly and touches are left to the parent, which
+ * saves the two overlay views.
  */
 public class FrameLayoutWithOverlay extends FrameLayout {
 
-    private final AlphaTouchInterceptorOverlay mOverlay;
+    /**
+     * The touch interceptor, null until first used or while disabled
+     */
+    private AlphaTouchInterceptorOverlay mOverlay;
+
+    /**
+     * The alpha layer given to the overlay, null to use the overlay itself
+     */
+    private View mAlphaLayer;
+
+    /**
+     * False to dim the alpha layer without an overlay
+     */
+    private boolean mOverlayEnabled = true;
+
+    /**
+     * Dims the alpha layer while the overlay is disabled, created on first
+     * use
+     */
+    private ColorDrawable mAlphaDrawable;
 
     /**
      * @param context The {@link Context} to use
@@ -37,11 +62,6 @@ public class FrameLayoutWithOverlay extends FrameLayout {
      */
     public FrameLayoutWithOverlay(Context context, AttributeSet attrs) {
         super(context, attrs);
-
-        // Programmatically create touch-interceptor View
-        mOverlay = new AlphaTouchInterceptorOverlay(context);
-
-        addView(mOverlay);
     }
 
     /**
@@ -51,7 +71,9 @@ public class FrameLayoutWithOverlay extends FrameLayout {
     @Override
     public void addView(View child, int index, ViewGroup.LayoutParams params) {
         super.addView(child, index, params);
-        mOverlay.bringToFront();
+        if (mOverlay != null) {
+            mOverlay.bringToFront();
+        }
     }
 
     /**
@@ -60,21 +82,87 @@ public class FrameLayoutWithOverlay extends FrameLayout {
      * set this if some child views need to appear above the alpha-layer
      */
     protected void setAlphaLayer(View layer) {
-        mOverlay.setAlphaLayer(layer);
+        mAlphaLayer = layer;
+        if (mOverlay != null) {
+            mOverlay.setAlphaLayer(layer);
+        }
     }
 
     /** Delegate to overlay: set the alpha value on the alpha layer */
     public void setAlphaLayerValue(float alpha) {
-        mOverlay.setAlphaLayerValue(alpha);
+        if (mOverlayEnabled) {
+            ensureOverlay().setAlphaLayerValue(alpha);
+            return;
+        }
+        if (mAlphaDrawable == null) {
+            mAlphaDrawable = new ColorDrawable(Color.BLACK);
+            mAlphaDrawable.setAlpha(0);
+            if (mAlphaLayer != null) {
+                Utils.setBackground(mAlphaLayer, mAlphaDrawable);
+            } else {
+                setForeground(mAlphaDrawable);
+            }
+        }
+        final int alphaLevel = (int) (Utils.clamp(alpha, 0.0f, 1.0f) * 255);
+        if (mAlphaDrawable.getAlpha() != alphaLevel) {
+            mAlphaDrawable.setAlpha(alphaLevel);
+        }
     }
 
-    /** Delegate to overlay */
+    /** Delegate to overlay, ignored while the overlay is disabled */
     public void setOverlayOnClickListener(OnClickListener listener) {
-        mOverlay.setOverlayOnClickListener(listener);
+        if (mOverlayEnabled) {
+            ensureOverlay().setOverlayOnClickListener(listener);
+        }
     }
 
-    /** Delegate to overlay */
+    /** Delegate to overlay, ignored while the overlay is disabled */
     public void setOverlayClickable(boolean clickable) {
-        mOverlay.setOverlayClickable(clickable);
+        if (mOverlayEnabled) {
+            ensureOverlay().setOverlayClickable(clickable);
+        }
+    }
+
+    /**
+     * Enables or disables the touch interceptor overlay. Disable it before
+     * first use to keep it from being created, e.g. when the parent handles
+     * the touches itself.
+     * 
+     * @param enabled True to intercept touches with an overlay, false to dim
+     *            the alpha layer directly and leave touches to the parent
+     */
+    public void setOverlayEnabled(boolean enabled) {
+        if (mOverlayEnabled == enabled) {
+            return;
+        }
+        mOverlayEnabled = enabled;
+        if (enabled) {
+            // The overlay dims the alpha layer again once created
+            if (mAlphaDrawable != null) {
+                if (mAlphaLayer != null) {
+                    Utils.setBackground(mAlphaLayer, null);
+                } else {
+                    setForeground(null);
+                }
+                mAlphaDrawable = null;
+            }
+        } else if (mOverlay != null) {
+            mOverlay.setAlphaLayer(null);
+            removeView(mOverlay);
+            mOverlay = null;
+        }
+    }
+
+    /**
+     * @return The touch interceptor overlay, created on first use
+     */
+    private AlphaTouchInterceptorOverlay ensureOverlay() {
+        if (mOverlay == null) {
+            // Programmatically create touch-interceptor View
+            mOverlay = new AlphaTouchInterceptorOverlay(getContext());
+            mOverlay.setAlphaLayer(mAlphaLayer);
+            addView(mOverlay);
+        }
+        return mOverlay;
     }
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+/**
+ * Animates the Y coordinate of the {@link CarouselContainer} when it is
+ * restored to a stored position.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+public interface HeaderAnimator {
+
+    /**
+     * Animates the header to the given Y coordinate. A running animation is
+     * retargeted rather than stacked.
+     *
+     * @param y The Y coordinate to move to
+     * @param duration The duration of the animation
+     */
+    public void animateTo(float y, long duration);
+
+    /**
+     * Cancels the running animation, if any
+     */
+    public void cancel();
+
+    /**
+     * @return True if an animation is currently running, false otherwise
+     */
+    public boolean isRunning();
+}
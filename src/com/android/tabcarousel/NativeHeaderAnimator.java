@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ObjectAnimator;
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.View;
+import android.view.animation.Interpolator;
+
+/**
+ * A {@link HeaderAnimator} running on the platform's {@link ObjectAnimator},
+ * which sets the Y coordinate through {@link View#Y} without reflection. The
+ * animator is our own, so cancelling it leaves any other animation of the
+ * header running.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+@TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+public class NativeHeaderAnimator extends AnimatorListenerAdapter implements HeaderAnimator {
+
+    /**
+     * The animator reused for every animation
+     */
+    private final ObjectAnimator mAnimator;
+
+    /**
+     * True while an animation is running
+     */
+    private boolean mRunning;
+
+    /**
+     * @param view The header to animate
+     * @param interpolator The interpolator used for every animation
+     */
+    public NativeHeaderAnimator(View view, Interpolator interpolator) {
+        mAnimator = ObjectAnimator.ofFloat(view, View.Y, 0f);
+        mAnimator.setInterpolator(interpolator);
+        mAnimator.addListener(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void animateTo(float y, long duration) {
+        mAnimator.cancel();
+        mAnimator.setFloatValues(y);
+        mAnimator.setDuration(duration);
+        mAnimator.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void cancel() {
+        mAnimator.cancel();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAnimationStart(Animator animation) {
+        mRunning = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAnimationEnd(Animator animation) {
+        mRunning = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAnimationCancel(Animator animation) {
+        mRunning = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAnimationRepeat(Animator animation) {
+        mRunning = true;
+    }
+}
@@ -32,6 +32,9 @@ public interface OnCarouselListener {
     public void onTouchUp();
 
     /**
+     * Called for every scroll step of the carousel, so implementations should
+     * not allocate.
+     * 
      * @param l Current horizontal scroll origin
      * @param t Current vertical scroll origin
      * @param oldl Previous horizontal scroll origin
@@ -0,0 +1,390 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.os.Build;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A process-wide pool of bitmaps no longer used by any tab, reused by the
+ * {@link TabImageLoader} through {@link BitmapFactory.Options#inBitmap} and as
+ * the target of the tab scaling, so swapping tab artwork doesn't allocate a
+ * new bitmap every time.
+ * <p>
+ * The pool only takes the bitmaps the image pipeline created. Such a bitmap is
+ * released to the pool once it is neither displayed by a {@link CarouselTab}
+ * nor held by the {@link TabImageCache}. The pooled bitmaps are bucketed by
+ * their size in bytes, rounded up to a power of two.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+public final class TabBitmapPool {
+
+    /**
+     * Part of the memory class given to the pool
+     */
+    private static final int MEMORY_CLASS_DIVIDER = 16;
+
+    /**
+     * Bytes in a megabyte
+     */
+    private static final int MEGABYTE = 1024 * 1024;
+
+    /**
+     * The pool shared by every carousel
+     */
+    private static TabBitmapPool sInstance;
+
+    /**
+     * The pooled bitmaps, keyed by size bucket
+     */
+    private final SparseArray<ArrayList<Bitmap>> mBuckets = new SparseArray<ArrayList<Bitmap>>();
+
+    /**
+     * The pooled bitmaps, least recently released first
+     */
+    private final ArrayList<Bitmap> mReleaseOrder = new ArrayList<Bitmap>();
+
+    /**
+     * The pipeline bitmaps still in use
+     */
+    private final HashMap<Bitmap, Usage> mUsages = new HashMap<Bitmap, Usage>();
+
+    /**
+     * The maximum size of the pooled bitmaps in bytes
+     */
+    private final int mMaxSize;
+
+    /**
+     * The size of the pooled bitmaps in bytes
+     */
+    private int mSize;
+
+    /**
+     * Requests served by a pooled bitmap
+     */
+    private int mHitCount;
+
+    /**
+     * Requests that found no pooled bitmap
+     */
+    private int mMissCount;
+
+    /**
+     * @param maxSize The maximum size of the pooled bitmaps in bytes
+     */
+    private TabBitmapPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * @param context The {@link Context} to use
+     * @return The pool shared by every carousel
+     */
+    public static synchronized TabBitmapPool getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new TabBitmapPool(Utils.getMemoryClass(context) * MEGABYTE
+                    / MEMORY_CLASS_DIVIDER);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Takes a pooled bitmap of exactly the given size, cleared to transparent
+     * 
+     * @param width The width of the bitmap
+     * @param height The height of the bitmap
+     * @param config The {@link Bitmap.Config} of the bitmap
+     * @return A pooled bitmap, or null if none matches
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        final ArrayList<Bitmap> bucket = mBuckets.get(getBucket(getByteCount(width, height,
+                config)));
+        if (bucket != null) {
+            for (int i = bucket.size() - 1; i >= 0; i--) {
+                final Bitmap candidate = bucket.get(i);
+                if (candidate.getWidth() == width && candidate.getHeight() == height
+                        && candidate.getConfig() == config) {
+                    take(bucket, i);
+                    candidate.eraseColor(Color.TRANSPARENT);
+                    mHitCount++;
+                    return candidate;
+                }
+            }
+        }
+        mMissCount++;
+        return null;
+    }
+
+    /**
+     * Sets a pooled bitmap as {@link BitmapFactory.Options#inBitmap} if one
+     * can hold the decoded image. Before KitKat, only a bitmap of the exact
+     * decoded size can be reused, and only without subsampling. The decode is
+     * made mutable either way so its result can be pooled later.
+     * 
+     * @param options The options of the decode, with the bounds of the image
+     *            and the sample size set
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public synchronized void prepareDecode(BitmapFactory.Options options) {
+        if (!Utils.hasHoneycomb()) {
+            return;
+        }
+        options.inMutable = true;
+        options.inBitmap = null;
+
+        final Bitmap.Config config = options.inPreferredConfig != null
+                ? options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+        final int sampledWidth = (options.outWidth + options.inSampleSize - 1)
+                / options.inSampleSize;
+        final int sampledHeight = (options.outHeight + options.inSampleSize - 1)
+                / options.inSampleSize;
+        final int byteCount = getByteCount(sampledWidth, sampledHeight, config);
+        final int firstBucket = getBucket(byteCount);
+
+        // Look in the bucket of the image, then in the next one up
+        for (int b = firstBucket; b <= firstBucket + 1; b++) {
+            final ArrayList<Bitmap> bucket = mBuckets.get(b);
+            if (bucket == null) {
+                continue;
+            }
+            for (int i = bucket.size() - 1; i >= 0; i--) {
+                final Bitmap candidate = bucket.get(i);
+                if (canDecodeInto(candidate, options, sampledWidth, sampledHeight, byteCount,
+                        config)) {
+                    take(bucket, i);
+                    options.inBitmap = candidate;
+                    mHitCount++;
+                    return;
+                }
+            }
+        }
+        mMissCount++;
+    }
+
+    /**
+     * @return True if the decode described by the options can write into the
+     *         candidate
+     */
+    private static boolean canDecodeInto(Bitmap candidate, BitmapFactory.Options options,
+            int sampledWidth, int sampledHeight, int byteCount, Bitmap.Config config) {
+        if (Utils.hasKitKat()) {
+            return getAllocationByteCount(candidate) >= byteCount;
+        }
+        return options.inSampleSize == 1 && candidate.getWidth() == sampledWidth
+                && candidate.getHeight() == sampledHeight && candidate.getConfig() == config;
+    }
+
+    /**
+     * Gives a bitmap back to the pool, for instance the
+     * {@link BitmapFactory.Options#inBitmap} of a failed decode or an
+     * intermediate image. Immutable bitmaps are recycled instead.
+     * 
+     * @param bitmap The bitmap no longer used
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        if (!bitmap.isMutable()) {
+            bitmap.recycle();
+            return;
+        }
+        final int size = getAllocationByteCount(bitmap);
+        if (size > mMaxSize) {
+            bitmap.recycle();
+            return;
+        }
+        final int key = getBucket(size);
+        ArrayList<Bitmap> bucket = mBuckets.get(key);
+        if (bucket == null) {
+            bucket = new ArrayList<Bitmap>();
+            mBuckets.put(key, bucket);
+        }
+        bucket.add(bitmap);
+        mReleaseOrder.add(bitmap);
+        mSize += size;
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Marks a pipeline bitmap as displayed by one more tab
+     * 
+     * @param bitmap The bitmap displayed
+     */
+    public synchronized void acquire(Bitmap bitmap) {
+        getUsage(bitmap).mDisplayCount++;
+    }
+
+    /**
+     * Marks a pipeline bitmap as displayed by one less tab, pooling it if
+     * nothing uses it anymore
+     * 
+     * @param bitmap The bitmap no longer displayed
+     */
+    public synchronized void release(Bitmap bitmap) {
+        final Usage usage = mUsages.get(bitmap);
+        if (usage != null && usage.mDisplayCount > 0) {
+            usage.mDisplayCount--;
+            putIfUnused(bitmap, usage);
+        }
+    }
+
+    /**
+     * Marks a pipeline bitmap as held or dropped by the {@link TabImageCache}
+     * 
+     * @param bitmap The bitmap
+     * @param cached True if the cache now holds the bitmap, false if it
+     *            dropped it
+     */
+    synchronized void setCached(Bitmap bitmap, boolean cached) {
+        final Usage usage = getUsage(bitmap);
+        usage.mCached = cached;
+        putIfUnused(bitmap, usage);
+    }
+
+    /**
+     * Drops every pooled bitmap
+     */
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * @return The number of requests served by a pooled bitmap
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return The number of requests that found no pooled bitmap
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return The size of the pooled bitmaps in bytes
+     */
+    public synchronized int getSize() {
+        return mSize;
+    }
+
+    /**
+     * @return The usage of a pipeline bitmap, created if needed
+     */
+    private Usage getUsage(Bitmap bitmap) {
+        Usage usage = mUsages.get(bitmap);
+        if (usage == null) {
+            usage = new Usage();
+            mUsages.put(bitmap, usage);
+        }
+        return usage;
+    }
+
+    /**
+     * Pools a pipeline bitmap neither displayed nor cached
+     */
+    private void putIfUnused(Bitmap bitmap, Usage usage) {
+        if (usage.mDisplayCount == 0 && !usage.mCached) {
+            mUsages.remove(bitmap);
+            put(bitmap);
+        }
+    }
+
+    /**
+     * Removes a pooled bitmap from its bucket and from the release order
+     */
+    private void take(ArrayList<Bitmap> bucket, int index) {
+        final Bitmap bitmap = bucket.remove(index);
+        mReleaseOrder.remove(bitmap);
+        mSize -= getAllocationByteCount(bitmap);
+    }
+
+    /**
+     * Recycles the least recently released bitmaps until the pool fits in the
+     * given size
+     */
+    private void trimToSize(int maxSize) {
+        while (mSize > maxSize && !mReleaseOrder.isEmpty()) {
+            final Bitmap bitmap = mReleaseOrder.remove(0);
+            final int size = getAllocationByteCount(bitmap);
+            mBuckets.get(getBucket(size)).remove(bitmap);
+            mSize -= size;
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * @return The size bucket of the given byte count, the exponent of the
+     *         next power of two
+     */
+    private static int getBucket(int byteCount) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(byteCount - 1, 0));
+    }
+
+    /**
+     * @return The byte count of a bitmap of the given size. Other 16-bit
+     *         configs are counted at 4 bytes per pixel, an upper bound.
+     */
+    private static int getByteCount(int width, int height, Bitmap.Config config) {
+        final int bytesPerPixel;
+        if (config == Bitmap.Config.ALPHA_8) {
+            bytesPerPixel = 1;
+        } else if (config == Bitmap.Config.RGB_565) {
+            bytesPerPixel = 2;
+        } else {
+            bytesPerPixel = 4;
+        }
+        return width * height * bytesPerPixel;
+    }
+
+    /**
+     * @return The memory held by the bitmap, which can be larger than its
+     *         current size when it was reused for a smaller image
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static int getAllocationByteCount(Bitmap bitmap) {
+        if (Utils.hasKitKat()) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    /** What holds on to a pipeline bitmap */
+    private static final class Usage {
+
+        /**
+         * Number of tabs displaying the bitmap
+         */
+        int mDisplayCount;
+
+        /**
+         * True while the {@link TabImageCache} holds the bitmap
+         */
+        boolean mCached;
+    }
+}
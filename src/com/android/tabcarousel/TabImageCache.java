@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.support.v4.util.LruCache;
+
+/**
+ * A process-wide, memory-bounded LRU cache of the decoded tab artwork, shared
+ * by every carousel so that returning to a carousel screen doesn't decode its
+ * images again.
+ * <p>
+ * The cache is sized in bytes from the memory class of the device. Entries are
+ * keyed by their source, the size they were decoded to and the transformation
+ * applied to them. Evicted images go to the {@link TabBitmapPool} once no tab
+ * displays them anymore.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+public final class TabImageCache {
+
+    /**
+     * The transformation applied by {@link TabImageLoader}
+     */
+    static final String TRANSFORMATION_CENTER_CROP = "centerCrop";
+
+    /**
+     * Part of the memory class given to the cache
+     */
+    private static final int MEMORY_CLASS_DIVIDER = 8;
+
+    /**
+     * Bytes in a megabyte
+     */
+    private static final int MEGABYTE = 1024 * 1024;
+
+    /**
+     * The cache shared by every carousel
+     */
+    private static TabImageCache sInstance;
+
+    /**
+     * The decoded images
+     */
+    private final LruCache<String, Bitmap> mCache;
+
+    /**
+     * Takes the evicted images
+     */
+    private final TabBitmapPool mPool;
+
+    /**
+     * @param maxSize The size of the cache in bytes
+     * @param pool Takes the evicted images
+     */
+    private TabImageCache(int maxSize, TabBitmapPool pool) {
+        mPool = pool;
+        mCache = new LruCache<String, Bitmap>(maxSize) {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getRowBytes() * value.getHeight();
+            }
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue,
+                    Bitmap newValue) {
+                if (oldValue != newValue) {
+                    mPool.setCached(oldValue, false);
+                }
+            }
+        };
+    }
+
+    /**
+     * @param context The {@link Context} to use
+     * @return The cache shared by every carousel
+     */
+    public static synchronized TabImageCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new TabImageCache(Utils.getMemoryClass(context) * MEGABYTE
+                    / MEMORY_CLASS_DIVIDER, TabBitmapPool.getInstance(context));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Builds the key of a decoded image
+     * 
+     * @param resId The resource identifier of the image, used if uri is null
+     * @param uri The {@link Uri} of the image, or null
+     * @param width The width the image was decoded to
+     * @param height The height the image was decoded to
+     * @param transformation The transformation applied to the image
+     * @return The key of the image
+     */
+    public static String getKey(int resId, Uri uri, int width, int height,
+            String transformation) {
+        final StringBuilder key = new StringBuilder(64);
+        if (uri != null) {
+            key.append(uri);
+        } else {
+            key.append("res:").append(resId);
+        }
+        return key.append('@').append(width).append('x').append(height).append('/')
+                .append(transformation).toString();
+    }
+
+    /**
+     * @param key The key of the image
+     * @return The cached image, or null if it isn't cached
+     */
+    public Bitmap get(String key) {
+        return mCache.get(key);
+    }
+
+    /**
+     * Looks up an image and marks it as displayed by one more tab in the
+     * {@link TabBitmapPool}, so it can't be reused while the caller shows it
+     * 
+     * @param key The key of the image
+     * @return The cached image, or null if it isn't cached
+     */
+    Bitmap acquire(String key) {
+        synchronized (mPool) {
+            final Bitmap bitmap = mCache.get(key);
+            if (bitmap != null) {
+                mPool.acquire(bitmap);
+            }
+            return bitmap;
+        }
+    }
+
+    /**
+     * Caches an image. The cache owns it from then on, it must not be
+     * recycled.
+     * 
+     * @param key The key of the image
+     * @param bitmap The image
+     */
+    public void put(String key, Bitmap bitmap) {
+        // Marked before the put, which may evict the image right away
+        mPool.setCached(bitmap, true);
+        mCache.put(key, bitmap);
+    }
+
+    /**
+     * Drops every cached image
+     */
+    public void evictAll() {
+        mCache.evictAll();
+    }
+
+    /**
+     * @return The number of lookups that found their image
+     */
+    public int getHitCount() {
+        return mCache.hitCount();
+    }
+
+    /**
+     * @return The number of lookups that missed their image
+     */
+    public int getMissCount() {
+        return mCache.missCount();
+    }
+
+    /**
+     * @return The part of the lookups that found their image, between 0 and 1
+     */
+    public float getHitRate() {
+        final int hits = mCache.hitCount();
+        final int lookups = hits + mCache.missCount();
+        return lookups > 0 ? (float) hits / lookups : 0f;
+    }
+
+    /**
+     * @return The size of the cached images in bytes
+     */
+    public int getSize() {
+        return mCache.size();
+    }
+
+    /**
+     * @return The maximum size of the cached images in bytes
+     */
+    public int getMaxSize() {
+        return mCache.maxSize();
+    }
+}
@@ -0,0 +1,438 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.android.tabcarousel.core.DiskArtworkCache;
+import com.android.tabcarousel.core.ImageSampling;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes the tab artwork off the main thread, through the
+ * {@link CarouselWorkScheduler} so the decodes of visible tabs run first and
+ * the other ones wait while the user flings.
+ * <p>
+ * The images are subsampled while decoding and then scaled and center cropped
+ * to the exact size of the tab, so the {@link CarouselTab} never holds more
+ * pixels than it draws. The result is added to the {@link TabImageCache} and
+ * delivered on the main thread, unless the request was cancelled in the
+ * meantime. Both decoding and scaling draw their bitmaps from the
+ * {@link TabBitmapPool} when it holds a match.
+ * <p>
+ * Images coming from a {@link Uri} are also stored on disk once scaled, in a
+ * {@link DiskArtworkCache}, so the next cold start decodes the small tab-sized
+ * encoding instead of the full resolution source.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+public final class TabImageLoader {
+
+    private static final String TAG = "TabImageLoader";
+
+    /**
+     * Directory of the disk cache, in the cache directory of the app
+     */
+    private static final String DISK_CACHE_DIR = "tab_artwork";
+
+    /**
+     * Maximum size of the disk cache
+     */
+    private static final long DISK_CACHE_SIZE = 10 * 1024 * 1024;
+
+    /**
+     * Quality of the JPEG encodings stored on disk
+     */
+    private static final int DISK_CACHE_QUALITY = 90;
+
+    /**
+     * The loader shared by every carousel
+     */
+    private static TabImageLoader sInstance;
+
+    /**
+     * Used to resolve the image sources
+     */
+    private final Context mContext;
+
+    /**
+     * Holds the decoded images
+     */
+    private final TabImageCache mCache;
+
+    /**
+     * Provides reusable bitmaps
+     */
+    private final TabBitmapPool mPool;
+
+    /**
+     * Stores the scaled {@link Uri} images, opened by the first decode
+     */
+    private DiskArtworkCache mDiskCache;
+
+    /**
+     * True once the disk cache failed to open
+     */
+    private boolean mDiskCacheDisabled;
+
+    /**
+     * Delivers the decoded images on the main thread
+     */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * @param context The {@link Context} to use
+     */
+    private TabImageLoader(Context context) {
+        mContext = context.getApplicationContext();
+        mCache = TabImageCache.getInstance(mContext);
+        mPool = TabBitmapPool.getInstance(mContext);
+    }
+
+    /**
+     * @param context The {@link Context} to use
+     * @return The loader shared by every carousel
+     */
+    public static synchronized TabImageLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new TabImageLoader(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Decodes an image to the given size and delivers it to the tab
+     * 
+     * @param tab The {@link CarouselTab} receiving the image
+     * @param resId The resource identifier of the image, used if uri is null
+     * @param uri The {@link Uri} of the image, or null
+     * @param width The width of the tab
+     * @param height The height of the tab
+     * @param priority One of the {@code CarouselWorkScheduler#PRIORITY_}
+     *            constants
+     * @return The {@link Request}, used to cancel it
+     */
+    Request load(CarouselTab tab, int resId, Uri uri, int width, int height, int priority) {
+        final Request request = new Request(tab, resId, uri, width, height);
+        request.mTask = CarouselWorkScheduler.getInstance().submit(request, priority);
+        return request;
+    }
+
+    /**
+     * Decodes the image of a request
+     * 
+     * @return The image scaled to the size of the tab, or null if it can't be
+     *         decoded as a bitmap
+     */
+    private Bitmap decode(Request request) {
+        byte[] stored = null;
+        if (request.mUri != null) {
+            stored = readStored(request);
+        }
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeStream(request, options, stored);
+        if (stored != null
+                && (options.outWidth != request.mWidth || options.outHeight != request.mHeight)) {
+            // Not the stored size, decode the source instead
+            stored = null;
+            decodeStream(request, options, null);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0 || request.mCancelled) {
+            return null;
+        }
+
+        options.inSampleSize = ImageSampling.getInSampleSize(options.outWidth,
+                options.outHeight, request.mWidth, request.mHeight);
+        options.inJustDecodeBounds = false;
+        mPool.prepareDecode(options);
+        Bitmap sampled = decodeStream(request, options, stored);
+        if (sampled == null && options.inBitmap != null) {
+            // The pooled bitmap didn't fit after all
+            mPool.put(options.inBitmap);
+            options.inBitmap = null;
+            sampled = decodeStream(request, options, stored);
+        }
+        if (sampled == null) {
+            return null;
+        }
+        if (request.mCancelled) {
+            mPool.put(sampled);
+            return null;
+        }
+        final Bitmap result = scaleCenterCrop(sampled, request.mWidth, request.mHeight);
+        if (request.mUri != null && stored == null) {
+            store(request, result);
+        }
+        return result;
+    }
+
+    /**
+     * Decodes the source of a request with the given options. Resources are
+     * read raw, without density scaling, as they are scaled to the tab
+     * afterwards anyway.
+     * 
+     * @param stored The encoding read from the disk cache, decoded instead of
+     *            the source if not null
+     */
+    private Bitmap decodeStream(Request request, BitmapFactory.Options options, byte[] stored) {
+        InputStream in = null;
+        try {
+            if (stored != null) {
+                return BitmapFactory.decodeByteArray(stored, 0, stored.length, options);
+            } else if (request.mUri != null) {
+                in = mContext.getContentResolver().openInputStream(request.mUri);
+            } else {
+                in = mContext.getResources().openRawResource(request.mResId);
+            }
+            return BitmapFactory.decodeStream(in, null, options);
+        } catch (final IOException e) {
+            Log.w(TAG, "Unable to open " + request, e);
+        } catch (final Resources.NotFoundException e) {
+            Log.w(TAG, "Unable to open " + request, e);
+        } catch (final IllegalArgumentException e) {
+            Log.w(TAG, "Unable to decode " + request + " into a pooled bitmap", e);
+        } catch (final OutOfMemoryError e) {
+            Log.w(TAG, "Unable to decode " + request, e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (final IOException ignored) {
+                    // Nothing left to do
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The disk cache, or null if it can't be opened
+     */
+    private synchronized DiskArtworkCache getDiskCache() {
+        if (mDiskCache == null && !mDiskCacheDisabled) {
+            try {
+                mDiskCache = DiskArtworkCache.open(new File(mContext.getCacheDir(),
+                        DISK_CACHE_DIR), DISK_CACHE_SIZE);
+            } catch (final IOException e) {
+                Log.w(TAG, "Unable to open the disk cache", e);
+                mDiskCacheDisabled = true;
+            }
+        }
+        return mDiskCache;
+    }
+
+    /**
+     * @return The tab-sized encoding of a request stored on disk, or null if
+     *         there is none
+     */
+    private byte[] readStored(Request request) {
+        final DiskArtworkCache diskCache = getDiskCache();
+        if (diskCache == null) {
+            return null;
+        }
+        try {
+            return diskCache.get(request.getCacheKey());
+        } catch (final IOException e) {
+            Log.w(TAG, "Unable to read " + request + " from the disk cache", e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the scaled image of a request on disk, as a PNG if it has
+     * transparency and as a JPEG otherwise
+     */
+    private void store(Request request, Bitmap bitmap) {
+        final DiskArtworkCache diskCache = getDiskCache();
+        if (diskCache == null) {
+            return;
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final Bitmap.CompressFormat format = bitmap.hasAlpha() ? Bitmap.CompressFormat.PNG
+                : Bitmap.CompressFormat.JPEG;
+        if (!bitmap.compress(format, DISK_CACHE_QUALITY, out)) {
+            return;
+        }
+        try {
+            diskCache.put(request.getCacheKey(), out.toByteArray());
+        } catch (final IOException e) {
+            Log.w(TAG, "Unable to write " + request + " to the disk cache", e);
+        }
+    }
+
+    /**
+     * Scales the image to cover the given size and crops the overflow evenly
+     * on both sides. The source goes back to the pool.
+     */
+    private Bitmap scaleCenterCrop(Bitmap source, int width, int height) {
+        if (source.getWidth() == width && source.getHeight() == height) {
+            return source;
+        }
+        final float scale = ImageSampling.getCenterCropScale(source.getWidth(),
+                source.getHeight(), width, height);
+        final Matrix matrix = new Matrix();
+        matrix.setScale(scale, scale);
+        matrix.postTranslate((width - source.getWidth() * scale) / 2f,
+                (height - source.getHeight() * scale) / 2f);
+
+        final Bitmap.Config config = source.getConfig() != null ? source.getConfig()
+                : Bitmap.Config.ARGB_8888;
+        Bitmap result = mPool.get(width, height, config);
+        if (result == null) {
+            result = Bitmap.createBitmap(width, height, config);
+        }
+        final Canvas canvas = new Canvas(result);
+        canvas.drawBitmap(source, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        mPool.put(source);
+        return result;
+    }
+
+    /** A pending decode of a tab image */
+    final class Request implements Runnable {
+
+        /**
+         * The tab receiving the image
+         */
+        final CarouselTab mTab;
+
+        /**
+         * The resource identifier of the image, used if {@code #mUri} is null
+         */
+        final int mResId;
+
+        /**
+         * The {@link Uri} of the image, or null
+         */
+        final Uri mUri;
+
+        /**
+         * The width to decode to
+         */
+        final int mWidth;
+
+        /**
+         * The height to decode to
+         */
+        final int mHeight;
+
+        /**
+         * Set once the tab no longer wants the image
+         */
+        volatile boolean mCancelled;
+
+        /**
+         * The queued decode
+         */
+        CarouselWorkScheduler.Task mTask;
+
+        /**
+         * Constructor for <code>Request</code>
+         */
+        Request(CarouselTab tab, int resId, Uri uri, int width, int height) {
+            mTab = tab;
+            mResId = resId;
+            mUri = uri;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        /**
+         * Drops the request, the image won't be delivered
+         */
+        void cancel() {
+            mCancelled = true;
+            if (mTask != null) {
+                mTask.cancel();
+            }
+        }
+
+        /**
+         * Moves the decode to another priority if it hasn't started yet
+         * 
+         * @param priority One of the {@code CarouselWorkScheduler#PRIORITY_}
+         *            constants
+         */
+        void setPriority(int priority) {
+            if (mTask != null) {
+                mTask.setPriority(priority);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+            final Bitmap bitmap = decode(this);
+            if (bitmap != null) {
+                // Held for the tab until it is delivered
+                mPool.acquire(bitmap);
+                mCache.put(getCacheKey(), bitmap);
+            }
+            mHandler.post(new Runnable() {
+
+                /**
+                 * {@inheritDoc}
+                 */
+                @Override
+                public void run() {
+                    if (!mCancelled) {
+                        mTab.onImageDecoded(Request.this, bitmap);
+                    } else if (bitmap != null) {
+                        // Stays cached for the next bind
+                        mPool.release(bitmap);
+                    }
+                }
+            });
+        }
+
+        /**
+         * @return The key of the decoded image in the {@link TabImageCache}
+         */
+        String getCacheKey() {
+            return TabImageCache.getKey(mResId, mUri, mWidth, mHeight,
+                    TabImageCache.TRANSFORMATION_CENTER_CROP);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return mUri != null ? mUri.toString() : "resource 0x" + Integer.toHexString(mResId);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+
+/**
+ * A process-wide LRU cache of the tab label layouts, measured and ellipsized
+ * on the {@link CarouselWorkScheduler} so that binding a tab or changing its
+ * label never measures text on the main thread.
+ * <p>
+ * Entries are keyed by the label, the width it was laid out to and the text
+ * attributes of the paint, its color included since a layout draws with a
+ * copy of the paint. Only tabs drawing themselves, as in
+ * {@code R.layout.carousel_tab_drawn}, draw their label from this cache.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+public final class TabLabelCache {
+
+    /**
+     * Max number of layouts kept
+     */
+    private static final int MAX_ENTRIES = 64;
+
+    /**
+     * The cache shared by every carousel
+     */
+    private static TabLabelCache sInstance;
+
+    /**
+     * The label layouts
+     */
+    private final LruCache<String, Layout> mCache = new LruCache<String, Layout>(MAX_ENTRIES);
+
+    /**
+     * Delivers the layouts on the main thread
+     */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Use {@code #getInstance()}
+     */
+    private TabLabelCache() {
+    }
+
+    /**
+     * @return The cache shared by every carousel
+     */
+    public static synchronized TabLabelCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new TabLabelCache();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Builds the key of a label layout
+     * 
+     * @param label The label
+     * @param width The width the label is laid out to
+     * @param paint The paint drawing the label
+     * @return The key of the layout
+     */
+    public static String getKey(CharSequence label, int width, TextPaint paint) {
+        final StringBuilder key = new StringBuilder(label.length() + 48);
+        key.append(width).append('/').append(paint.getTextSize()).append('/')
+                .append(paint.getTextScaleX()).append('/').append(paint.getFlags()).append('/')
+                .append(paint.getColor()).append('/')
+                .append(System.identityHashCode(paint.getTypeface())).append('/');
+        return key.append(label).toString();
+    }
+
+    /**
+     * @param key The key of the layout
+     * @return The cached layout, or null if it isn't built yet
+     */
+    public Layout get(String key) {
+        return mCache.get(key);
+    }
+
+    /**
+     * Builds a label layout in the background and caches it
+     * 
+     * @param key The key of the layout, from
+     *            {@code #getKey(CharSequence, int, TextPaint)}
+     * @param label The label
+     * @param width The width to lay the label out to
+     * @param paint The paint drawing the label, copied before this returns
+     * @param callback Called on the main thread once the layout is built
+     * @return The {@link CarouselWorkScheduler.Task} building the layout
+     */
+    public CarouselWorkScheduler.Task load(final String key, CharSequence label,
+            final int width, TextPaint paint, final Callback callback) {
+        // The paint is used by the caller while the layout is built
+        final TextPaint paintCopy = new TextPaint(paint);
+        final String text = label.toString();
+        return CarouselWorkScheduler.getInstance().submit(new Runnable() {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void run() {
+                final Layout layout = buildLayout(text, width, paintCopy);
+                mCache.put(key, layout);
+                mHandler.post(new Runnable() {
+
+                    /**
+                     * {@inheritDoc}
+                     */
+                    @Override
+                    public void run() {
+                        callback.onLabelLayout(key, layout);
+                    }
+                });
+            }
+        }, CarouselWorkScheduler.PRIORITY_VISIBLE);
+    }
+
+    /**
+     * Drops every cached layout
+     */
+    public void evictAll() {
+        mCache.evictAll();
+    }
+
+    /**
+     * Lays a label out on a single centered line, ellipsized at the end to fit
+     * the given width
+     * 
+     * @param label The label
+     * @param width The width to lay the label out to
+     * @param paint The paint drawing the label
+     * @return The layout of the label
+     */
+    static Layout buildLayout(String label, int width, TextPaint paint) {
+        final CharSequence line = TextUtils.ellipsize(label.replace('\n', ' '), paint, width,
+                TextUtils.TruncateAt.END);
+        return new StaticLayout(line, paint, width, Layout.Alignment.ALIGN_CENTER, 1.0f, 0.0f,
+                false);
+    }
+
+    /**
+     * Receives the label layouts built in the background
+     */
+    public interface Callback {
+
+        /**
+         * Called on the main thread once a layout is built
+         * 
+         * @param key The key of the layout
+         * @param layout The layout of the label
+         */
+        public void onLabelLayout(String key, Layout layout);
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.drawable.Drawable;
+import android.text.Layout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.view.View;
+
+import com.android.tabcarousel.core.ImageSampling;
+
+/**
+ * Draws a whole {@link CarouselTab} in one pass: the image, center cropped,
+ * the dim layer over it, the label scrim and the label. Used by the tabs
+ * inflated without child views, in place of the image, label, scrim and alpha
+ * layer views. The selection indicator is drawn by the
+ * {@link CarouselContainer}.
+ * <p>
+ * The label is laid out in the background by the {@link TabLabelCache}. Until
+ * its layout is built, a new label is left blank and a resized label keeps its
+ * previous layout.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+final class TabPainter implements TabLabelCache.Callback {
+
+    /**
+     * The tab drawn
+     */
+    private final View mHost;
+
+    /**
+     * Height of the label band at the bottom of the tab
+     */
+    private final int mLabelHeight;
+
+    /**
+     * Padding on both sides of the label
+     */
+    private final int mLabelPadding;
+
+    /**
+     * Draws the label
+     */
+    private final TextPaint mLabelPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+
+    /**
+     * Draws the label scrim
+     */
+    private final Paint mScrimPaint = new Paint();
+
+    /**
+     * Draws the dim layer
+     */
+    private final Paint mDimPaint = new Paint();
+
+    /**
+     * The image, null if none
+     */
+    private Drawable mImage;
+
+    /**
+     * The label
+     */
+    private CharSequence mLabel;
+
+    /**
+     * The key of the label layout wanted, null if none
+     */
+    private String mLabelKey;
+
+    /**
+     * The label layout drawn, null if none
+     */
+    private Layout mLabelLayout;
+
+    /**
+     * Builds the wanted label layout, null if none is being built
+     */
+    private CarouselWorkScheduler.Task mLabelTask;
+
+    /**
+     * Width of the tab
+     */
+    private int mWidth;
+
+    /**
+     * Height of the tab
+     */
+    private int mHeight;
+
+    /**
+     * @param host The tab drawn
+     */
+    TabPainter(View host) {
+        mHost = host;
+        final Resources res = host.getResources();
+        mLabelHeight = res.getDimensionPixelSize(R.dimen.carousel_label_height);
+        mLabelPadding = res.getDimensionPixelSize(R.dimen.carousel_label_padding);
+        mLabelPaint.setTextSize(res.getDimension(R.dimen.text_size_large));
+        mLabelPaint.setColor(res.getColor(R.color.white));
+        mScrimPaint.setColor(res.getColor(R.color.transparent_black));
+        mDimPaint.setColor(Color.BLACK);
+        mDimPaint.setAlpha(0);
+    }
+
+    /**
+     * @param image The image to draw, null for none
+     */
+    void setImage(Drawable image) {
+        if (mImage == image) {
+            return;
+        }
+        if (mImage != null) {
+            mImage.setCallback(null);
+        }
+        mImage = image;
+        if (image != null) {
+            image.setCallback(mHost);
+            updateImageBounds();
+        }
+        mHost.invalidate();
+    }
+
+    /**
+     * @return The image drawn, null if none
+     */
+    Drawable getImage() {
+        return mImage;
+    }
+
+    /**
+     * @param label The label to draw
+     */
+    void setLabel(CharSequence label) {
+        if (!TextUtils.equals(mLabel, label)) {
+            // Don't show the previous label while the new one is laid out
+            mLabelLayout = null;
+            mHost.invalidate();
+        }
+        mLabel = label;
+        updateLabelLayout();
+    }
+
+    /**
+     * @param alpha The alpha of the dim layer, between 0 and 1
+     */
+    void setDimAlpha(float alpha) {
+        final int level = (int) (Utils.clamp(alpha, 0.0f, 1.0f) * 255);
+        if (mDimPaint.getAlpha() != level) {
+            mDimPaint.setAlpha(level);
+            mHost.invalidate();
+        }
+    }
+
+    /**
+     * Called when the tab is resized
+     */
+    void setSize(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        updateImageBounds();
+        updateLabelLayout();
+    }
+
+    /**
+     * @param drawable A drawable invalidating itself
+     * @return True if the drawable is the image
+     */
+    boolean verifyDrawable(Drawable drawable) {
+        return drawable == mImage;
+    }
+
+    /**
+     * Draws the whole tab
+     */
+    void draw(Canvas canvas) {
+        final int bandTop = mHeight - mLabelHeight;
+        if (mImage != null) {
+            canvas.save();
+            canvas.clipRect(0, 0, mWidth, mHeight);
+            mImage.draw(canvas);
+            canvas.restore();
+        }
+        if (mDimPaint.getAlpha() > 0) {
+            canvas.drawRect(0, 0, mWidth, bandTop, mDimPaint);
+        }
+        canvas.drawRect(0, bandTop, mWidth, mHeight, mScrimPaint);
+        if (mLabelLayout != null) {
+            canvas.save();
+            canvas.translate(mLabelPadding,
+                    bandTop + (mLabelHeight - mLabelLayout.getHeight()) / 2);
+            mLabelLayout.draw(canvas);
+            canvas.restore();
+        }
+    }
+
+    /**
+     * Centers the image and scales it to cover the tab
+     */
+    private void updateImageBounds() {
+        if (mImage == null) {
+            return;
+        }
+        final int width = mImage.getIntrinsicWidth();
+        final int height = mImage.getIntrinsicHeight();
+        if (width <= 0 || height <= 0 || mWidth <= 0 || mHeight <= 0) {
+            mImage.setBounds(0, 0, mWidth, mHeight);
+            return;
+        }
+        final float scale = ImageSampling.getCenterCropScale(width, height, mWidth, mHeight);
+        final int scaledWidth = Math.round(width * scale);
+        final int scaledHeight = Math.round(height * scale);
+        final int left = (mWidth - scaledWidth) / 2;
+        final int top = (mHeight - scaledHeight) / 2;
+        mImage.setBounds(left, top, left + scaledWidth, top + scaledHeight);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onLabelLayout(String key, Layout layout) {
+        if (key.equals(mLabelKey)) {
+            mLabelTask = null;
+            mLabelLayout = layout;
+            mHost.invalidate();
+        }
+    }
+
+    /**
+     * Shows the layout of the label at the width of the tab, from the
+     * {@link TabLabelCache} if it was already built, otherwise by starting to
+     * build it
+     */
+    private void updateLabelLayout() {
+        final int width = mWidth - 2 * mLabelPadding;
+        final String key = mLabel != null && width > 0 ? TabLabelCache.getKey(mLabel, width,
+                mLabelPaint) : null;
+        if (key == null ? mLabelKey == null : key.equals(mLabelKey)) {
+            return;
+        }
+        mLabelKey = key;
+        if (mLabelTask != null) {
+            mLabelTask.cancel();
+            mLabelTask = null;
+        }
+        if (key == null) {
+            mLabelLayout = null;
+            mHost.invalidate();
+            return;
+        }
+        final TabLabelCache cache = TabLabelCache.getInstance();
+        final Layout layout = cache.get(key);
+        if (layout != null) {
+            mLabelLayout = layout;
+            mHost.invalidate();
+        } else {
+            mLabelTask = cache.load(key, mLabel, width, mLabelPaint, this);
+        }
+    }
+}
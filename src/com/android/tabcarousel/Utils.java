@@ -18,7 +18,10 @@ package com.android.tabcarousel;
 
 import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
+import android.app.ActivityManager;
+import android.content.Context;
 import android.content.res.Resources.Theme;
+import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.util.TypedValue;
 import android.view.View;
@@ -43,6 +46,16 @@ public final class Utils {
         return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
     }
     
+    /**
+     * Used to determine if the device is running Honeycomb Mr1 or greater
+     * 
+     * @return True if the device is running Honeycomb Mr1 or greater, false
+     *         otherwise
+     */
+    public static final boolean hasHoneycombMr1() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1;
+    }
+    
     /**
      * Used to determine if the device is running Honeycomb Mr2 or greater
      * 
@@ -53,6 +66,16 @@ public final class Utils {
         return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR2;
     }
 
+    /**
+     * Used to determine if the device is running Ice Cream Sandwich or greater
+     * 
+     * @return True if the device is running Ice Cream Sandwich or greater,
+     *         false otherwise
+     */
+    public static final boolean hasIceCreamSandwich() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH;
+    }
+
     /**
      * Used to determine if the device is running Jelly Bean or greater
      * 
@@ -63,6 +86,30 @@ public final class Utils {
         return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
     }
 
+    /**
+     * Used to determine if the device is running KitKat or greater
+     * 
+     * @return True if the device is running KitKat or greater, false
+     *         otherwise
+     */
+    public static final boolean hasKitKat() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    /**
+     * Returns the memory class of the device in megabytes, the heap limit
+     * before Eclair
+     */
+    @TargetApi(Build.VERSION_CODES.ECLAIR)
+    public static int getMemoryClass(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ECLAIR) {
+            final ActivityManager activityManager = (ActivityManager) context
+                    .getSystemService(Context.ACTIVITY_SERVICE);
+            return activityManager.getMemoryClass();
+        }
+        return (int) (Runtime.getRuntime().maxMemory() / (1024 * 1024));
+    }
+
     /**
      * Resolves the given attribute id of the theme to a resource id
      */
@@ -84,6 +131,19 @@ public final class Utils {
         return 0;
     }
 
+    /**
+     * Sets the background of the view.
+     */
+    @SuppressWarnings("deprecation")
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public static void setBackground(View view, Drawable background) {
+        if (hasJellyBean()) {
+            view.setBackground(background);
+        } else {
+            view.setBackgroundDrawable(background);
+        }
+    }
+
     /**
      * Sets an alpha value on the view.
      */
@@ -93,6 +153,18 @@ public final class Utils {
         }
     }
 
+    /**
+     * Used to determine if a view can be given a hardware layer
+     * 
+     * @return True if the view is hardware accelerated, false if it isn't or
+     *         the device is older than Honeycomb, where a hardware layer
+     *         would be rendered in software
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public static boolean canUseHardwareLayer(View view) {
+        return hasHoneycomb() && view.isHardwareAccelerated();
+    }
+
     /**
      * If the input value lies outside of the specified range, return the nearer
      * bound. Otherwise, return the input value, unchanged.
@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.app.Activity;
+import android.support.v4.view.ViewPager;
+import android.view.View;
+import android.widget.HorizontalScrollView;
+import android.widget.ListView;
+
+import com.android.tabcarousel.core.CarouselScrollEngine;
+import com.android.tabcarousel.core.ScrollTrace;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Replays the starter traces through the scroll callbacks of a real carousel
+ * and fails if any frame allocates. Carousel positions are reported through
+ * {@code CarouselPagerAdapter#onPageScrolled}, which scrolls the carousel
+ * into {@code CarouselContainer#onScrollChanged} and
+ * {@code CarouselPagerAdapter#onCarouselScrollChanged}. List events go
+ * through {@code BackScrollManager#onScroll} into
+ * {@code CarouselContainer#moveToYCoordinate}.
+ * <p>
+ * The shadow of {@link View#scrollTo(int, int)} allocates by itself, so each
+ * scroll is repeated on a plain {@link HorizontalScrollView} of the same size
+ * and its bytes are taken off. The bytes are read from the allocation counter
+ * of the JVM thread, so the test is skipped on a JVM without one.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class CarouselScrollAllocationTest {
+
+    /**
+     * One more tab than fits the screen, so the carousel scrolls while every
+     * tab stays bound
+     */
+    private static final int TAB_COUNT = CarouselScrollEngine.MAX_VISIBLE_TABS + 1;
+
+    /**
+     * Frames run before the replay so the first layout is done
+     */
+    private static final int SETTLE_FRAMES = 30;
+
+    /**
+     * Times the cost of reading the allocation counter is sampled
+     */
+    private static final int CALIBRATION_RUNS = 16;
+
+    /**
+     * The allocation counter of the JVM threads
+     */
+    private com.sun.management.ThreadMXBean mThreadBean;
+
+    /**
+     * The id of the replaying thread
+     */
+    private long mThreadId;
+
+    /**
+     * Bytes allocated by reading the allocation counter itself
+     */
+    private long mReadCost;
+
+    /**
+     * The carousel the traces are replayed against
+     */
+    private CarouselContainer mCarousel;
+
+    /**
+     * The pager following the carousel
+     */
+    private ViewPager mPager;
+
+    /**
+     * Keeps the carousel and the pager in sync
+     */
+    private CarouselPagerAdapter mAdapter;
+
+    /**
+     * The list of the current page
+     */
+    private ListView mList;
+
+    /**
+     * Moves the header with {@code #mList}
+     */
+    private BackScrollManager mBackScrollManager;
+
+    /**
+     * Receives the framework scroll of every carousel scroll, without the
+     * carousel code
+     */
+    private HorizontalScrollView mTwin;
+
+    /**
+     * The carousel scroll position
+     */
+    private int mScrollX;
+
+    /**
+     * The scroll position when the finger went down
+     */
+    private int mDownScrollX;
+
+    /**
+     * Where the finger went down
+     */
+    private float mDownX;
+
+    /**
+     * Bytes allocated by the carousel during the current frame
+     */
+    private long mCarouselBytes;
+
+    /**
+     * Bytes allocated by {@code #mTwin} during the current frame
+     */
+    private long mTwinBytes;
+
+    /**
+     * Finds the allocation counter, then builds the carousel, its pager and
+     * the twin scroll view
+     */
+    @Before
+    public void setUp() {
+        final java.lang.management.ThreadMXBean threadBean = ManagementFactory
+                .getThreadMXBean();
+        assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        mThreadBean = (com.sun.management.ThreadMXBean) threadBean;
+        assumeTrue(mThreadBean.isThreadAllocatedMemorySupported());
+        mThreadBean.setThreadAllocatedMemoryEnabled(true);
+        mThreadId = Thread.currentThread().getId();
+
+        long readCost = Long.MAX_VALUE;
+        for (int i = 0; i < CALIBRATION_RUNS; i++) {
+            final long start = getAllocatedBytes();
+            readCost = Math.min(readCost, getAllocatedBytes() - start);
+        }
+        mReadCost = readCost;
+
+        final Activity activity = Robolectric.setupActivity(Activity.class);
+        activity.setContentView(R.layout.carousel_container);
+        mCarousel = (CarouselContainer) activity.findViewById(R.id.carousel_header);
+        mPager = (ViewPager) activity.findViewById(R.id.carousel_pager);
+        // Starting the layers posts their release on every scroll
+        mCarousel.setHardwareLayersEnabled(false);
+
+        mCarousel.initializeTabs(TAB_COUNT);
+        for (int i = 0; i < TAB_COUNT; i++) {
+            mCarousel.setLabel(i, "Tab " + i, i == 0);
+        }
+        mAdapter = new CarouselPagerAdapter(mPager, mCarousel);
+        mPager.setAdapter(new ListPagerAdapter(mCarousel, TAB_COUNT));
+
+        ShadowLooper.pauseMainLooper();
+        for (int i = 0; i < SETTLE_FRAMES; i++) {
+            ShadowLooper.idleMainLooper(ScrollTraceReplayer.FRAME_INTERVAL_MILLIS);
+        }
+        assertTrue(mCarousel.getMaxScrollX() > 0);
+        mList = (ListView) mPager.findViewWithTag(mPager.getCurrentItem());
+        mBackScrollManager = new BackScrollManager(mCarousel, null, mPager.getCurrentItem());
+
+        final View strip = mCarousel.getChildAt(0);
+        final View content = new View(activity);
+        mTwin = new HorizontalScrollView(activity);
+        mTwin.addView(content);
+        mTwin.setPadding(mCarousel.getPaddingLeft(), mCarousel.getPaddingTop(),
+                mCarousel.getPaddingRight(), mCarousel.getPaddingBottom());
+        content.layout(0, 0, strip.getWidth(), strip.getHeight());
+        mTwin.layout(0, 0, mCarousel.getWidth(), mCarousel.getHeight());
+    }
+
+    /**
+     * A slow drag across the carousel, then the list scrolling the header
+     * away
+     */
+    @Test
+    public void slowDrag() throws IOException {
+        assertNoAllocations("slow_drag");
+    }
+
+    /**
+     * A fling across the carousel
+     */
+    @Test
+    public void fling() throws IOException {
+        assertNoAllocations("fling");
+    }
+
+    /**
+     * Taps on the tabs
+     */
+    @Test
+    public void tabTap() throws IOException {
+        assertNoAllocations("tab_tap");
+    }
+
+    /**
+     * A drag back and forth across the carousel
+     */
+    @Test
+    public void backAndForth() throws IOException {
+        assertNoAllocations("back_and_forth");
+    }
+
+    /**
+     * Replays a starter trace once to load every class on the path, then
+     * again, checking the bytes allocated by each frame
+     */
+    private void assertNoAllocations(String name) throws IOException {
+        final ScrollTrace trace = ScrollTrace.loadStarterTrace(name);
+        final List<ScrollTrace.Event> events = trace.getEvents();
+        final long[] frameBytes = new long[trace.getFrameCount()];
+        replay(events, frameBytes);
+        replay(events, frameBytes);
+        for (int frame = 0; frame < frameBytes.length; frame++) {
+            assertEquals(name + " frame " + frame, 0, frameBytes[frame]);
+        }
+    }
+
+    /**
+     * Replays the events from the start of the carousel, one frame at a time.
+     * The main looper stays paused, so no frame is drawn.
+     */
+    private void replay(List<ScrollTrace.Event> events, long[] frameBytes) {
+        scrollCarousel(0);
+        int next = 0;
+        for (int frame = 0; frame < frameBytes.length; frame++) {
+            mCarouselBytes = 0;
+            mTwinBytes = 0;
+            while (next < events.size() && events.get(next).frame == frame) {
+                onEvent(events.get(next++));
+            }
+            frameBytes[frame] = mCarouselBytes - mTwinBytes;
+        }
+    }
+
+    /**
+     * Runs the scroll callbacks for a single trace event
+     */
+    private void onEvent(ScrollTrace.Event event) {
+        switch (event.type) {
+            case ScrollTrace.TYPE_DOWN:
+                mDownX = event.a * mCarousel.getWidth();
+                mDownScrollX = mScrollX;
+                break;
+            case ScrollTrace.TYPE_MOVE:
+            case ScrollTrace.TYPE_UP:
+                scrollCarousel(mDownScrollX + Math.round(mDownX - event.a * mCarousel.getWidth()));
+                break;
+            case ScrollTrace.TYPE_LIST_SCROLL: {
+                final long start = getAllocatedBytes();
+                mBackScrollManager.onScroll(mList, (int) event.a, mList.getChildCount(),
+                        mList.getCount());
+                mCarouselBytes += getAllocatedBytes() - start - mReadCost;
+                break;
+            }
+            case ScrollTrace.TYPE_TAB_TAP: {
+                final int index = Math.min((int) event.a, TAB_COUNT - 1);
+                scrollCarousel(mCarousel.getScrollEngine().getScrollXForPosition(index));
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Reports the page position matching a carousel position to the
+     * adapter, as the pager does while it scrolls, then repeats the
+     * framework scroll on the twin
+     */
+    private void scrollCarousel(int x) {
+        final CarouselScrollEngine engine = mCarousel.getScrollEngine();
+        mScrollX = Math.max(0, Math.min(x, mCarousel.getMaxScrollX()));
+        final float position = engine.getTabPosition(mScrollX, 0);
+        final int page = (int) position;
+        final float offset = position - page;
+        final int offsetPixels = Math.round(offset * mPager.getWidth());
+
+        long start = getAllocatedBytes();
+        mAdapter.onPageScrolled(page, offset, offsetPixels);
+        mCarouselBytes += getAllocatedBytes() - start - mReadCost;
+
+        final int twinX = engine.getScrollXForPosition(page + offset);
+        start = getAllocatedBytes();
+        mTwin.scrollTo(twinX, 0);
+        mTwinBytes += getAllocatedBytes() - start - mReadCost;
+    }
+
+    /**
+     * @return The bytes allocated by the replaying thread so far
+     */
+    private long getAllocatedBytes() {
+        return mThreadBean.getThreadAllocatedBytes(mThreadId);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Activity;
+import android.support.v4.view.ViewPager;
+
+import com.android.tabcarousel.core.CarouselScrollEngine;
+import com.android.tabcarousel.core.ScrollTrace;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Replays each starter {@link ScrollTrace} and checks after every frame that
+ * the carousel only shows tabs it created before the replay. The tab strip
+ * binds the tabs entering the viewport to the views of the tabs leaving it,
+ * so once every tab position has been shown, scrolling inflates nothing.
+ * <p>
+ * The bytes allocated by the scroll callbacks are counted by
+ * {@link CarouselScrollAllocationTest}.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class CarouselTabRecyclingTest {
+
+    /**
+     * Enough tabs for the strip to recycle tabs while the traces scroll
+     */
+    private static final int TAB_COUNT = 3 * CarouselScrollEngine.MAX_VISIBLE_TABS;
+
+    /**
+     * Frames run before the replay so the first layout is done
+     */
+    private static final int SETTLE_FRAMES = 30;
+
+    /**
+     * The tabs created before the replay
+     */
+    private final Set<CarouselTab> mKnownTabs = Collections
+            .newSetFromMap(new IdentityHashMap<CarouselTab, Boolean>());
+
+    /**
+     * The carousel the traces are replayed against
+     */
+    private CarouselContainer mCarousel;
+
+    /**
+     * The strip holding the tabs of the carousel
+     */
+    private CarouselTabStrip mTabStrip;
+
+    /**
+     * Frames advanced during the replay
+     */
+    private int mFrame;
+
+    /**
+     * Replays the traces, checking the tabs after each frame
+     */
+    private ScrollTraceReplayer mReplayer;
+
+    /**
+     * Builds the carousel and its pager, then scrolls across every tab so
+     * the strip holds all the tabs it needs
+     */
+    @Before
+    public void setUp() {
+        final Activity activity = Robolectric.setupActivity(Activity.class);
+        activity.setContentView(R.layout.carousel_container);
+        mCarousel = (CarouselContainer) activity.findViewById(R.id.carousel_header);
+        mTabStrip = (CarouselTabStrip) mCarousel.findViewById(R.id.carousel_tab_container);
+        final ViewPager pager = (ViewPager) activity.findViewById(R.id.carousel_pager);
+
+        mCarousel.initializeTabs(TAB_COUNT);
+        for (int i = 0; i < TAB_COUNT; i++) {
+            mCarousel.setLabel(i, "Tab " + i, i == 0);
+        }
+        new CarouselPagerAdapter(pager, mCarousel);
+        pager.setAdapter(new ListPagerAdapter(mCarousel, TAB_COUNT));
+
+        ShadowLooper.pauseMainLooper();
+        for (int i = 0; i < SETTLE_FRAMES; i++) {
+            idleFrame();
+        }
+        final int tabWidth = mCarousel.getScrollEngine().getTabWidth();
+        for (int x = 0; x <= mCarousel.getMaxScrollX(); x += tabWidth) {
+            mCarousel.scrollTo(x, 0);
+            idleFrame();
+            collectBoundTabs();
+        }
+        mCarousel.scrollTo(0, 0);
+        idleFrame();
+        collectBoundTabs();
+        assertTrue(mKnownTabs.size() < TAB_COUNT);
+
+        mReplayer = new ScrollTraceReplayer(mCarousel, pager,
+                new ScrollTraceReplayer.FrameDriver() {
+
+                    @Override
+                    public void advanceFrame(long frameIntervalMillis) {
+                        ShadowLooper.idleMainLooper(frameIntervalMillis);
+                        assertBoundTabsKnown();
+                        mFrame++;
+                    }
+                });
+    }
+
+    /**
+     * A slow drag across the carousel, then the list scrolling the header
+     * away
+     */
+    @Test
+    public void slowDrag() throws IOException {
+        replay("slow_drag");
+    }
+
+    /**
+     * A fling across the carousel
+     */
+    @Test
+    public void fling() throws IOException {
+        replay("fling");
+    }
+
+    /**
+     * Taps on the tabs
+     */
+    @Test
+    public void tabTap() throws IOException {
+        replay("tab_tap");
+    }
+
+    /**
+     * A drag back and forth across the carousel
+     */
+    @Test
+    public void backAndForth() throws IOException {
+        replay("back_and_forth");
+    }
+
+    /**
+     * Replays a starter trace, checking the tabs after each frame
+     */
+    private void replay(String name) throws IOException {
+        final ScrollTrace trace = ScrollTrace.loadStarterTrace(name);
+        mFrame = 0;
+        mReplayer.replay(trace);
+        assertEquals(trace.getFrameCount(), mFrame);
+    }
+
+    /**
+     * Runs the main looper for one frame
+     */
+    private static void idleFrame() {
+        ShadowLooper.idleMainLooper(ScrollTraceReplayer.FRAME_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Adds the currently bound tabs to the known ones
+     */
+    private void collectBoundTabs() {
+        for (int i = mTabStrip.getFirstBoundTab(); i <= mTabStrip.getLastBoundTab(); i++) {
+            final CarouselTab tab = mTabStrip.getTabAt(i);
+            if (tab != null) {
+                mKnownTabs.add(tab);
+            }
+        }
+    }
+
+    /**
+     * Every bound tab was created before the replay
+     */
+    private void assertBoundTabsKnown() {
+        for (int i = mTabStrip.getFirstBoundTab(); i <= mTabStrip.getLastBoundTab(); i++) {
+            final CarouselTab tab = mTabStrip.getTabAt(i);
+            assertTrue("new tab " + i + " in frame " + mFrame,
+                    tab == null || mKnownTabs.contains(tab));
+        }
+    }
+}
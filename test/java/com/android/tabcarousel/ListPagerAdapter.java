@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.support.v4.view.PagerAdapter;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.ListView;
+
+/**
+ * The pages of the carousel tests: one list per tab, moving the header
+ * through a {@link BackScrollManager} and tagged with its position so the
+ * {@link ScrollTraceReplayer} can scroll the current one.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+class ListPagerAdapter extends PagerAdapter {
+
+    /**
+     * Number of items of each list, enough to scroll the header away
+     */
+    private static final int LIST_ITEM_COUNT = 50;
+
+    /**
+     * The carousel moved by the lists
+     */
+    private final CarouselContainer mCarousel;
+
+    /**
+     * Number of pages
+     */
+    private final int mCount;
+
+    /**
+     * @param carousel The carousel moved by the lists
+     * @param count Number of pages, one per tab
+     */
+    ListPagerAdapter(CarouselContainer carousel, int count) {
+        mCarousel = carousel;
+        mCount = count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object instantiateItem(ViewGroup container, int position) {
+        final ListView list = new ListView(container.getContext());
+        // Keep the first items under the header
+        list.addHeaderView(View.inflate(container.getContext(), R.layout.faux_carousel, null),
+                null, false);
+        final String[] items = new String[LIST_ITEM_COUNT];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = "Item " + i;
+        }
+        list.setAdapter(new ArrayAdapter<String>(container.getContext(),
+                android.R.layout.simple_list_item_1, items));
+        list.setOnScrollListener(new BackScrollManager(mCarousel, null, position));
+        list.setTag(position);
+        container.addView(list);
+        return list;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroyItem(ViewGroup container, int position, Object object) {
+        container.removeView((View) object);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isViewFromObject(View view, Object object) {
+        return view == object;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Activity;
+import android.support.v4.view.ViewPager;
+
+import com.android.tabcarousel.core.CarouselScrollEngine;
+import com.android.tabcarousel.core.FrameReport;
+import com.android.tabcarousel.core.ScrollTrace;
+import com.nineoldandroids.view.ViewHelper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Replays each starter {@link ScrollTrace} against a carousel, a pager of
+ * lists and their {@link BackScrollManager}s on a paused main looper, checks
+ * the per-frame counts and writes each {@link FrameReport} as JSON to
+ * {@code build/reports/scroll-traces}.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ScrollTraceReplayTest {
+
+    /**
+     * One more tab than fits the screen, so the carousel scrolls while every
+     * tab stays bound
+     */
+    private static final int TAB_COUNT = CarouselScrollEngine.MAX_VISIBLE_TABS + 1;
+
+    /**
+     * Frames run before the replay so the first layout is done
+     */
+    private static final int SETTLE_FRAMES = 30;
+
+    /**
+     * Where the reports are written
+     */
+    private static final File REPORT_DIR = new File("build/reports/scroll-traces");
+
+    /**
+     * The carousel the traces are replayed against
+     */
+    private CarouselContainer mCarousel;
+
+    /**
+     * The pager following the carousel
+     */
+    private ViewPager mPager;
+
+    /**
+     * Replays the traces
+     */
+    private ScrollTraceReplayer mReplayer;
+
+    /**
+     * Builds the carousel, its pager and the lists, then lets them settle
+     */
+    @Before
+    public void setUp() {
+        final Activity activity = Robolectric.setupActivity(Activity.class);
+        activity.setContentView(R.layout.carousel_container);
+        mCarousel = (CarouselContainer) activity.findViewById(R.id.carousel_header);
+        mPager = (ViewPager) activity.findViewById(R.id.carousel_pager);
+
+        mCarousel.initializeTabs(TAB_COUNT);
+        for (int i = 0; i < TAB_COUNT; i++) {
+            mCarousel.setLabel(i, "Tab " + i, i == 0);
+        }
+        new CarouselPagerAdapter(mPager, mCarousel);
+        mPager.setAdapter(new ListPagerAdapter(mCarousel, TAB_COUNT));
+
+        ShadowLooper.pauseMainLooper();
+        mReplayer = new ScrollTraceReplayer(mCarousel, mPager,
+                new ScrollTraceReplayer.FrameDriver() {
+
+                    @Override
+                    public void advanceFrame(long frameIntervalMillis) {
+                        ShadowLooper.idleMainLooper(frameIntervalMillis);
+                    }
+                });
+        for (int i = 0; i < SETTLE_FRAMES; i++) {
+            ShadowLooper.idleMainLooper(ScrollTraceReplayer.FRAME_INTERVAL_MILLIS);
+        }
+    }
+
+    /**
+     * Dragging the carousel and then scrolling the list never measures or
+     * lays out the carousel, and the list moves the header without animating
+     * it
+     */
+    @Test
+    public void slowDrag() throws IOException {
+        final FrameReport report = replay("slow_drag");
+        assertNoRelayout(report);
+        assertAtMostOneScrollPerFrame(report);
+        assertTrue(report.getTotal(FrameReport.COUNTER_LISTENER_CALLBACKS) > 0);
+        assertNoAnimatorStarts(report, "slow_drag", ScrollTrace.TYPE_LIST_SCROLL,
+                ScrollTrace.TYPE_LIST_SCROLL);
+        assertTrue(ViewHelper.getY(mCarousel) < 0);
+    }
+
+    /**
+     * A fling moves the pager on without laying out the carousel
+     */
+    @Test
+    public void fling() throws IOException {
+        final FrameReport report = replay("fling");
+        assertNoRelayout(report);
+        assertAtMostOneScrollPerFrame(report);
+        assertTrue(mPager.getCurrentItem() > 0);
+    }
+
+    /**
+     * Each tap selects the tapped tab in the pager, without laying out the
+     * carousel
+     */
+    @Test
+    public void tabTap() throws IOException {
+        final FrameReport report = replay("tab_tap");
+        assertNoRelayout(report);
+        assertTrue(report.getTotal(FrameReport.COUNTER_LISTENER_CALLBACKS) >= 3);
+        assertEquals(1, mPager.getCurrentItem());
+    }
+
+    /**
+     * Dragging back and forth never lays out the carousel or starts a header
+     * animation while the finger is down
+     */
+    @Test
+    public void backAndForth() throws IOException {
+        final FrameReport report = replay("back_and_forth");
+        assertNoRelayout(report);
+        assertAtMostOneScrollPerFrame(report);
+        assertNoAnimatorStarts(report, "back_and_forth", ScrollTrace.TYPE_DOWN,
+                ScrollTrace.TYPE_UP);
+    }
+
+    /**
+     * Replays a starter trace and writes its report
+     */
+    private FrameReport replay(String name) throws IOException {
+        final FrameReport report = mReplayer.replay(ScrollTrace.loadStarterTrace(name));
+        writeReport(report, name);
+        return report;
+    }
+
+    /**
+     * No header animation starts in the frames of the events of a starter
+     * trace whose type is between the given types
+     */
+    private static void assertNoAnimatorStarts(FrameReport report, String name, int firstType,
+            int lastType) throws IOException {
+        for (final ScrollTrace.Event event : ScrollTrace.loadStarterTrace(name).getEvents()) {
+            if (event.type >= firstType && event.type <= lastType) {
+                assertEquals("animator starts in frame " + event.frame, 0,
+                        report.get(event.frame, FrameReport.COUNTER_ANIMATOR_STARTS));
+            }
+        }
+    }
+
+    /**
+     * Scrolling and selecting tabs never measures or lays out the carousel
+     */
+    private static void assertNoRelayout(FrameReport report) {
+        for (int frame = 0; frame < report.getFrameCount(); frame++) {
+            assertEquals("measures in frame " + frame, 0,
+                    report.get(frame, FrameReport.COUNTER_MEASURES));
+            assertEquals("layouts in frame " + frame, 0,
+                    report.get(frame, FrameReport.COUNTER_LAYOUTS));
+        }
+    }
+
+    /**
+     * The carousel sends at most one scroll change per frame, next to at most
+     * one touch callback
+     */
+    private static void assertAtMostOneScrollPerFrame(FrameReport report) {
+        for (int frame = 0; frame < report.getFrameCount(); frame++) {
+            assertTrue("listener callbacks in frame " + frame,
+                    report.get(frame, FrameReport.COUNTER_LISTENER_CALLBACKS) <= 2);
+        }
+    }
+
+    /**
+     * Writes the report of a trace as JSON
+     */
+    private static void writeReport(FrameReport report, String name) throws IOException {
+        if (!REPORT_DIR.isDirectory() && !REPORT_DIR.mkdirs()) {
+            throw new IOException("Can't create " + REPORT_DIR);
+        }
+        final Writer out = new OutputStreamWriter(new FileOutputStream(new File(REPORT_DIR,
+                name + ".json")), "UTF-8");
+        try {
+            report.writeJson(out);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.os.SystemClock;
+import android.support.v4.view.ViewPager;
+import android.view.MotionEvent;
+import android.view.ViewTreeObserver;
+import android.view.ViewTreeObserver.OnPreDrawListener;
+import android.widget.ListView;
+
+import com.android.tabcarousel.core.CarouselMetrics;
+import com.android.tabcarousel.core.FrameReport;
+import com.android.tabcarousel.core.ScrollTrace;
+
+import java.util.List;
+
+/**
+ * Replays a recorded {@link ScrollTrace} against a real
+ * {@link CarouselContainer}, its {@link CarouselPagerAdapter} and the lists
+ * of the pager attached to a {@link BackScrollManager}, and reports for each
+ * frame how many measure, layout and draw passes ran, how many header
+ * animations started and how many carousel listener callbacks fired.
+ * <p>
+ * The measure and layout passes are read from the {@link CarouselMetrics} of
+ * the carousel. List events scroll the list of the current page, found by a
+ * tag holding its position in the pager.
+ * <p>
+ * Frames are advanced by a {@link FrameDriver}. On the JVM, a driver idling a
+ * paused Robolectric main looper by one frame interval gives a deterministic
+ * frame clock.
+ *
+ * @author Andrew Neal (andrewdneal@gmail.com)
+ */
+public class ScrollTraceReplayer {
+
+    /**
+     * Duration of a display frame
+     */
+    public static final long FRAME_INTERVAL_MILLIS = 16;
+
+    /**
+     * The carousel the trace is replayed against
+     */
+    private final CarouselContainer mCarousel;
+
+    /**
+     * The pager holding the lists moving the header
+     */
+    private final ViewPager mPager;
+
+    /**
+     * Advances the frames
+     */
+    private final FrameDriver mFrameDriver;
+
+    /**
+     * Draw passes counted so far
+     */
+    private int mDraws;
+
+    /**
+     * Header animations started so far
+     */
+    private int mAnimatorStarts;
+
+    /**
+     * Carousel listener callbacks fired so far
+     */
+    private int mListenerCallbacks;
+
+    /**
+     * @param carousel The carousel the trace is replayed against
+     * @param pager The pager following the carousel, each page a list
+     *            attached to a {@link BackScrollManager} and tagged with its
+     *            position
+     * @param frameDriver Advances the frames
+     */
+    public ScrollTraceReplayer(CarouselContainer carousel, ViewPager pager,
+            FrameDriver frameDriver) {
+        mCarousel = carousel;
+        mPager = pager;
+        mFrameDriver = frameDriver;
+    }
+
+    /**
+     * Replays the trace, one frame at a time
+     * 
+     * @param trace The {@link ScrollTrace} to replay
+     * @return The counters of every frame
+     */
+    public FrameReport replay(ScrollTrace trace) {
+        final FrameReport report = new FrameReport(trace.getName(), trace.getFrameCount());
+        final List<ScrollTrace.Event> events = trace.getEvents();
+
+        // Count through decorators, restored once the trace is replayed
+        final OnCarouselListener listener = mCarousel.getListener();
+        final HeaderAnimator headerAnimator = mCarousel.getHeaderAnimator();
+        final CarouselMetrics previousMetrics = mCarousel.getMetrics();
+        final CarouselMetrics metrics = new CarouselMetrics();
+        mCarousel.setListener(new CountingListener(listener));
+        mCarousel.setHeaderAnimator(new CountingHeaderAnimator(headerAnimator));
+        mCarousel.setMetrics(metrics);
+        final ViewTreeObserver observer = mCarousel.getViewTreeObserver();
+        observer.addOnPreDrawListener(mPreDrawListener);
+
+        final long startTime = SystemClock.uptimeMillis();
+        long downTime = startTime;
+        int next = 0;
+        try {
+            for (int frame = 0; frame < report.getFrameCount(); frame++) {
+                final int draws = mDraws;
+                final int animatorStarts = mAnimatorStarts;
+                final int listenerCallbacks = mListenerCallbacks;
+
+                final long frameTime = startTime + frame * FRAME_INTERVAL_MILLIS;
+                while (next < events.size() && events.get(next).frame == frame) {
+                    final ScrollTrace.Event event = events.get(next++);
+                    if (event.type == ScrollTrace.TYPE_DOWN) {
+                        downTime = frameTime;
+                    }
+                    dispatchEvent(event, downTime, frameTime);
+                }
+                mFrameDriver.advanceFrame(FRAME_INTERVAL_MILLIS);
+                final CarouselMetrics.Snapshot snapshot = metrics.snapshotAndReset();
+
+                report.add(frame, FrameReport.COUNTER_MEASURES,
+                        (int) snapshot.getCount(CarouselMetrics.HISTOGRAM_MEASURE));
+                report.add(frame, FrameReport.COUNTER_LAYOUTS,
+                        (int) snapshot.getCount(CarouselMetrics.HISTOGRAM_LAYOUT));
+                report.add(frame, FrameReport.COUNTER_DRAWS, mDraws - draws);
+                report.add(frame, FrameReport.COUNTER_ANIMATOR_STARTS, mAnimatorStarts
+                        - animatorStarts);
+                report.add(frame, FrameReport.COUNTER_LISTENER_CALLBACKS, mListenerCallbacks
+                        - listenerCallbacks);
+            }
+        } finally {
+            if (observer.isAlive()) {
+                observer.removeOnPreDrawListener(mPreDrawListener);
+            }
+            mCarousel.setMetrics(previousMetrics);
+            mCarousel.setHeaderAnimator(headerAnimator);
+            mCarousel.setListener(listener);
+        }
+        return report;
+    }
+
+    /**
+     * Delivers a single trace event
+     */
+    private void dispatchEvent(ScrollTrace.Event event, long downTime, long eventTime) {
+        switch (event.type) {
+            case ScrollTrace.TYPE_DOWN:
+                dispatchTouch(MotionEvent.ACTION_DOWN, event.a, event.b, downTime, eventTime);
+                break;
+            case ScrollTrace.TYPE_MOVE:
+                dispatchTouch(MotionEvent.ACTION_MOVE, event.a, event.b, downTime, eventTime);
+                break;
+            case ScrollTrace.TYPE_UP:
+                dispatchTouch(MotionEvent.ACTION_UP, event.a, event.b, downTime, eventTime);
+                break;
+            case ScrollTrace.TYPE_LIST_SCROLL: {
+                final ListView list = (ListView) mPager.findViewWithTag(mPager.getCurrentItem());
+                if (list != null) {
+                    list.setSelectionFromTop((int) event.a, (int) event.b);
+                }
+                break;
+            }
+            case ScrollTrace.TYPE_TAB_TAP:
+                tapTab((int) event.a, eventTime);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Taps the center of the given tab
+     */
+    private void tapTab(int index, long eventTime) {
+        final int tabWidth = mCarousel.getScrollEngine().getTabWidth();
+        final float x = ((index + 0.5f) * tabWidth - mCarousel.getScrollX())
+                / mCarousel.getWidth();
+        dispatchTouch(MotionEvent.ACTION_DOWN, x, 0.5f, eventTime, eventTime);
+        dispatchTouch(MotionEvent.ACTION_UP, x, 0.5f, eventTime, eventTime);
+    }
+
+    /**
+     * Dispatches a touch to the carousel. The coordinates are fractions of the
+     * carousel size.
+     */
+    private void dispatchTouch(int action, float x, float y, long downTime, long eventTime) {
+        final MotionEvent event = MotionEvent.obtain(downTime, eventTime, action,
+                x * mCarousel.getWidth(), y * mCarousel.getHeight(), 0);
+        mCarousel.dispatchTouchEvent(event);
+        event.recycle();
+    }
+
+    /**
+     * Counts the draw passes
+     */
+    private final OnPreDrawListener mPreDrawListener = new OnPreDrawListener() {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean onPreDraw() {
+            mDraws++;
+            return true;
+        }
+    };
+
+    /**
+     * Advances the replay by one frame
+     */
+    public interface FrameDriver {
+
+        /**
+         * Runs everything scheduled for the next frame: input, animations,
+         * layout and drawing.
+         * 
+         * @param frameIntervalMillis The duration of the frame
+         */
+        public void advanceFrame(long frameIntervalMillis);
+    }
+
+    /** Counts the calls made to the carousel listener */
+    private final class CountingListener implements OnCarouselListener {
+
+        /**
+         * The listener receiving the calls
+         */
+        private final OnCarouselListener mDelegate;
+
+        /**
+         * @param delegate The listener receiving the calls
+         */
+        public CountingListener(OnCarouselListener delegate) {
+            mDelegate = delegate;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onTouchDown() {
+            mListenerCallbacks++;
+            mDelegate.onTouchDown();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onTouchUp() {
+            mListenerCallbacks++;
+            mDelegate.onTouchUp();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onCarouselScrollChanged(int l, int t, int oldl, int oldt) {
+            mListenerCallbacks++;
+            mDelegate.onCarouselScrollChanged(l, t, oldl, oldt);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onTabSelected(int position) {
+            mListenerCallbacks++;
+            mDelegate.onTabSelected(position);
+        }
+    }
+
+    /** Counts the header animations started */
+    private final class CountingHeaderAnimator implements HeaderAnimator {
+
+        /**
+         * The animator running the animations
+         */
+        private final HeaderAnimator mDelegate;
+
+        /**
+         * @param delegate The animator running the animations
+         */
+        public CountingHeaderAnimator(HeaderAnimator delegate) {
+            mDelegate = delegate;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void animateTo(float y, long duration) {
+            mAnimatorStarts++;
+            mDelegate.animateTo(y, duration);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void cancel() {
+            mDelegate.cancel();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isRunning() {
+            return mDelegate.isRunning();
+        }
+    }
+}